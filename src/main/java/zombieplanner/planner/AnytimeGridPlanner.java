@@ -0,0 +1,368 @@
+package zombieplanner.planner;
+
+import java.util.Arrays;
+
+/**
+ * An anytime (ARA*) planner over a {@link RiskCostField}, searching backwards
+ * from the goal. Each call to {@link #improve(int, long)} does a bounded
+ * amount of work: it first finds a path with a heuristic inflated by
+ * epsilon, then keeps lowering epsilon and reusing earlier work to improve the
+ * path, across as many calls as it takes.
+ *
+ * Because g values (costs-to-goal) only ever decrease during a search, the
+ * path found by walking down g from the start is always valid and costs at
+ * most g(start), even in the middle of an iteration.
+ *
+ * Costs can change under the search, either in the cost field or through
+ * extra costs for entering cells (see {@link #setExtraCost(int, double)}).
+ * Either restarts the search on the next call to improve, within that call's
+ * budget. Until the new search reaches the start again, {@link #nextStep(int)}
+ * keeps to the path the previous search had found.
+ *
+ * @author Tim Vergenz
+ */
+public class AnytimeGridPlanner {
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+
+	private final RiskCostField costs;
+	private final int width, height;
+	private final int goal;
+	private int start;
+
+	private final double initialEpsilon, epsilonStep;
+	private double epsilon;
+	private double bound = INF;
+
+	// g values are only valid where gStamp matches the current search
+	private final double[] g;
+	private final int[] gStamp;
+	private int search = 0;
+
+	private final IndexedKeyHeap open;
+	private final int[] closedStamp, inconsStamp;
+	private int iteration = 0;
+	private int[] incons = new int[64];
+	private int inconsCount = 0;
+	private final int[] rekey;
+
+	private int costsVersion;
+
+	// extra cost of entering each cell, on top of the cost field, if any
+	private double[] extra;
+	private boolean extraChanged = false;
+
+	// the best path before the last restart, from its start to the goal
+	private int[] previous = new int[0];
+
+	// landmark bounds for the heuristic, if any
+	private final LandmarkHeuristic landmarks;
+
+	public AnytimeGridPlanner(RiskCostField costs, int start, int goal,
+			double initialEpsilon, double epsilonStep) {
+		this(costs, start, goal, initialEpsilon, epsilonStep, null);
+	}
+
+	/**
+	 * Create a planner whose heuristic uses landmark bounds, which must have
+	 * been computed for the same cost field.
+	 */
+	public AnytimeGridPlanner(RiskCostField costs, int start, int goal,
+			double initialEpsilon, double epsilonStep, LandmarkHeuristic landmarks) {
+		if (initialEpsilon < 1.0 || epsilonStep <= 0)
+			throw new IllegalArgumentException("Need epsilon >= 1 and a positive step.");
+		if (landmarks != null && landmarks.getCosts() != costs)
+			throw new IllegalArgumentException("Landmarks were computed for a different cost field.");
+		this.costs = costs;
+		this.landmarks = landmarks;
+		this.width = costs.getWidth();
+		this.height = costs.getHeight();
+		this.start = start;
+		this.goal = goal;
+		this.initialEpsilon = initialEpsilon;
+		this.epsilonStep = epsilonStep;
+
+		int n = costs.length();
+		this.g = new double[n];
+		this.gStamp = new int[n];
+		this.closedStamp = new int[n];
+		this.inconsStamp = new int[n];
+		this.open = new IndexedKeyHeap(n);
+		this.rekey = new int[n];
+		restart();
+	}
+
+	/**
+	 * Throw away the current search and start over at the initial epsilon,
+	 * keeping its path to follow until the new search finds one. Happens
+	 * automatically when the cost field or the extra costs change.
+	 */
+	public void restart() {
+		if (!extraChanged)
+			keepPath();
+		extraChanged = false;
+		search++;
+		iteration++;
+		open.clear();
+		inconsCount = 0;
+		epsilon = initialEpsilon;
+		bound = INF;
+		costsVersion = costs.getVersion();
+		setG(goal, 0);
+		open.put(goal, key(goal), 0);
+	}
+
+	/**
+	 * Remember the current search's path, if it has one, to follow after a
+	 * restart. Has to be done before costs change, while the g values still
+	 * match them.
+	 */
+	private void keepPath() {
+		if (search > 0 && getG(start) < INF)
+			previous = currentPath();
+	}
+
+	/**
+	 * Walk down the g values of the current search from the start.
+	 */
+	private int[] currentPath() {
+		int[] path = new int[64];
+		int n = 0;
+		for (int curr = start; curr >= 0 && n < costs.length(); curr = bestNeighbor(curr)) {
+			if (n == path.length)
+				path = Arrays.copyOf(path, 2*n);
+			path[n++] = curr;
+		}
+		return Arrays.copyOf(path, n);
+	}
+
+	/**
+	 * Cost of moving from cell a to the adjacent cell b.
+	 */
+	private double c(int a, int b) {
+		double cost = costs.edgeCost(a, b);
+		return (extra == null) ? cost : cost + extra[b];
+	}
+
+	/**
+	 * Set an extra cost for entering a cell, on top of the cost field (e.g.
+	 * for risks only this planner knows about). If the value differs from
+	 * the current one, the search restarts on the next call to
+	 * {@link #improve(int, long)}.
+	 */
+	public void setExtraCost(int i, double cost) {
+		if (extra == null) {
+			if (cost == 0)
+				return;
+			extra = new double[costs.length()];
+		}
+		if (extra[i] != cost) {
+			if (!extraChanged)
+				keepPath();
+			extra[i] = cost;
+			extraChanged = true;
+		}
+	}
+
+	public double getExtraCost(int i) {
+		return (extra == null) ? 0 : extra[i];
+	}
+
+	private double getG(int i) {
+		return (gStamp[i] == search) ? g[i] : INF;
+	}
+
+	private void setG(int i, double value) {
+		gStamp[i] = search;
+		g[i] = value;
+	}
+
+	private double h(int a, int b) {
+		if (landmarks != null)
+			return landmarks.h(a, b);
+		return ProbabilisticGridDStar.CONSTANT
+				* (Math.abs(a % width - b % width) + Math.abs(a / width - b / width));
+	}
+
+	private double key(int s) {
+		return getG(s) + epsilon * h(start, s);
+	}
+
+	/**
+	 * Move the start (the human's position). Keys in the open list are
+	 * recomputed for the new heuristic.
+	 */
+	public void setStart(int start) {
+		if (start == this.start)
+			return;
+		this.start = start;
+		rekeyOpen();
+	}
+
+	private void rekeyOpen() {
+		int n = open.size();
+		for (int p = 0; p < n; p++)
+			rekey[p] = open.elementAt(p);
+		for (int p = 0; p < n; p++)
+			open.put(rekey[p], key(rekey[p]), getG(rekey[p]));
+	}
+
+	/**
+	 * Work on the search until it reaches the final epsilon and the path from
+	 * the start is optimal, or until a budget runs out.
+	 * @param maxExpansions maximum number of cells to expand in this call
+	 * @param deadline {@link System#nanoTime()} value after which to stop
+	 * @return true if there is nothing left to improve: the current path is
+	 *         optimal, or the goal is unreachable from the start
+	 */
+	public boolean improve(int maxExpansions, long deadline) {
+		if (costsVersion != costs.getVersion()) {
+			restart();
+			// the map itself changed, so the old path may be blocked
+			previous = new int[0];
+		}
+		else if (extraChanged) {
+			restart();
+		}
+
+		int expansions = 0;
+		while (true) {
+			// ImprovePath: expand until the start can't get any cheaper
+			while (open.topKey1() < getG(start)) {
+				if (expansions >= maxExpansions)
+					return false;
+				if ((expansions & 63) == 0 && System.nanoTime() - deadline > 0)
+					return false;
+				expand(open.poll());
+				expansions++;
+			}
+
+			if (getG(start) == INF)
+				return true; // unreachable
+			double m = minUnexpanded();
+			bound = (m == INF) ? 1.0 : Math.min(epsilon, Math.max(1.0, getG(start) / m));
+			if (epsilon <= 1.0)
+				return true;
+
+			// next iteration: smaller epsilon, reopen inconsistent cells
+			epsilon = Math.max(1.0, epsilon - epsilonStep);
+			iteration++;
+			for (int k = 0; k < inconsCount; k++)
+				open.put(incons[k], 0, 0);
+			inconsCount = 0;
+			rekeyOpen();
+		}
+	}
+
+	/**
+	 * Lower bound on the cost from the start to the goal through any cell
+	 * that still has work pending.
+	 */
+	private double minUnexpanded() {
+		double min = INF;
+		for (int p = 0; p < open.size(); p++) {
+			int s = open.elementAt(p);
+			min = Math.min(min, getG(s) + h(start, s));
+		}
+		for (int k = 0; k < inconsCount; k++)
+			min = Math.min(min, getG(incons[k]) + h(start, incons[k]));
+		return min;
+	}
+
+	private void expand(int s) {
+		closedStamp[s] = iteration;
+		int x = s % width, y = s / width;
+		if (x > 0) relax(s - 1, s);
+		if (x < width - 1) relax(s + 1, s);
+		if (y > 0) relax(s - width, s);
+		if (y < height - 1) relax(s + width, s);
+	}
+
+	private void relax(int p, int s) {
+		double v = getG(s) + c(p, s);
+		if (v < getG(p)) {
+			setG(p, v);
+			if (closedStamp[p] != iteration) {
+				open.put(p, key(p), v);
+			}
+			else if (inconsStamp[p] != iteration) {
+				inconsStamp[p] = iteration;
+				if (inconsCount == incons.length)
+					incons = Arrays.copyOf(incons, 2*inconsCount);
+				incons[inconsCount++] = p;
+			}
+		}
+	}
+
+	/**
+	 * Get the neighbor to move to from a cell along the best path found so
+	 * far, or -1 if no path from that cell is known yet. If the current
+	 * search hasn't reached the cell since it was restarted, the path found
+	 * before the restart is followed instead.
+	 */
+	public int nextStep(int from) {
+		if (from == goal)
+			return -1;
+		if (getG(from) == INF) {
+			for (int k = 0; k + 1 < previous.length; k++)
+				if (previous[k] == from)
+					return previous[k + 1];
+			return -1;
+		}
+		return bestNeighbor(from);
+	}
+
+	/**
+	 * Get the neighbor of a cell that minimizes the cost of moving there
+	 * plus its g value, or -1 if there isn't one with a path to the goal.
+	 */
+	private int bestNeighbor(int from) {
+		if (from == goal || getG(from) == INF)
+			return -1;
+		int x = from % width, y = from / width;
+		int best = -1;
+		double min = INF;
+		if (x > 0 && c(from, from - 1) + getG(from - 1) < min) {
+			min = c(from, from - 1) + getG(from - 1); best = from - 1;
+		}
+		if (x < width - 1 && c(from, from + 1) + getG(from + 1) < min) {
+			min = c(from, from + 1) + getG(from + 1); best = from + 1;
+		}
+		if (y > 0 && c(from, from - width) + getG(from - width) < min) {
+			min = c(from, from - width) + getG(from - width); best = from - width;
+		}
+		if (y < height - 1 && c(from, from + width) + getG(from + width) < min) {
+			min = c(from, from + width) + getG(from + width); best = from + width;
+		}
+		return best;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Get the cost of the best path from the start found so far.
+	 */
+	public double getPathCost() {
+		return getG(start);
+	}
+
+	/**
+	 * Get the factor by which the current path is at most worse than optimal,
+	 * as of the last completed iteration (positive infinity if none has
+	 * completed since the search was restarted).
+	 */
+	public double getSuboptimalityBound() {
+		return bound;
+	}
+
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	public RiskCostField getCosts() {
+		return costs;
+	}
+
+}
@@ -0,0 +1,117 @@
+package zombieplanner.planner;
+
+import java.util.List;
+import java.util.Set;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.World;
+import zombieplanner.simulator.Zombie;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A risk-averse planner with a bound on the planning time spent in each call
+ * to {@link #getAction}, for interactive use. It uses an
+ * {@link AnytimeGridPlanner}: each call does at most the configured amount
+ * of work, moves along the best path found so far, and keeps improving that
+ * path on later calls. While no path is known yet, the human waits in place.
+ *
+ * The search uses {@link LandmarkHeuristic landmark} bounds, which are
+ * computed (or loaded) when the planner is initialized.
+ *
+ * Visible zombies raise the cost of the cells around them, as for
+ * {@link RiskAverseZombiePlanner}. Any change restarts the search, within the
+ * same budget, and the human keeps to the previous path until the new search
+ * finds one.
+ *
+ * @author Tim Vergenz
+ */
+public class AnytimeZombiePlanner extends RiskAverseZombiePlanner {
+
+	public static final double INITIAL_EPSILON = 3.0;
+	public static final double EPSILON_STEP = 0.5;
+	public static final int LANDMARKS = 8;
+
+	private final long timeBudget;
+	private final int expansionBudget;
+
+	private AnytimeGridPlanner anytime;
+	private LandmarkHeuristic landmarks;
+
+	/**
+	 * Create a planner with a 20 ms budget per call.
+	 */
+	public AnytimeZombiePlanner() {
+		this(20000000L, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param timeBudget maximum planning time per call, in nanoseconds
+	 * @param expansionBudget maximum number of cells expanded per call
+	 */
+	public AnytimeZombiePlanner(long timeBudget, int expansionBudget) {
+		this.timeBudget = timeBudget;
+		this.expansionBudget = expansionBudget;
+	}
+
+	@Override
+	public void initialize(World world) {
+		super.initialize(world);
+		this.anytime = null;
+		// done here so it doesn't eat into the budget of the first step
+		this.landmarks = LandmarkHeuristic.of(world, RiskCostField.of(world, 10000), LANDMARKS);
+	}
+
+	@Override
+	protected IntCoord nextStep(IntCoord from, Set<Zombie> visibleZombies) {
+		int width = map.size(0);
+		int start = (int)from.get(0) + (int)from.get(1) * width;
+		if (anytime == null) {
+			anytime = new AnytimeGridPlanner(landmarks.getCosts(), start,
+					(int)goal.get(0) + (int)goal.get(1) * width,
+					INITIAL_EPSILON, EPSILON_STEP, landmarks);
+		}
+
+		updateDynamicRisk(visibleZombies);
+
+		anytime.setStart(start);
+		boolean done = anytime.improve(expansionBudget, System.nanoTime() + timeBudget);
+		int next = anytime.nextStep(start);
+		if (next < 0)
+			return done ? null : from;
+		return new IntCoord(next % width, next / width);
+	}
+
+	@Override
+	protected double getAlpha() {
+		return anytime.getCosts().getAlpha();
+	}
+
+	@Override
+	protected void setExtraCost(int i, double cost) {
+		anytime.setExtraCost(i, cost);
+	}
+
+	/**
+	 * Get the factor by which the path currently being followed is at most
+	 * worse than optimal (positive infinity before the first one is found).
+	 */
+	public double getSuboptimalityBound() {
+		return (anytime == null) ? Double.POSITIVE_INFINITY : anytime.getSuboptimalityBound();
+	}
+
+	@Override
+	public List<IntCoord> getPlan() {
+		if (anytime == null)
+			return null;
+		int width = map.size(0);
+		List<IntCoord> plan = Lists.newArrayList();
+		int curr = anytime.nextStep(anytime.getStart());
+		while (curr >= 0 && plan.size() < anytime.getCosts().length()) {
+			plan.add(new IntCoord(curr % width, curr / width));
+			curr = anytime.nextStep(curr);
+		}
+		return plan.isEmpty() ? null : plan;
+	}
+
+}
@@ -0,0 +1,336 @@
+package zombieplanner.planner;
+
+import java.util.List;
+import java.util.Set;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.Action;
+import zombieplanner.simulator.World;
+import zombieplanner.simulator.Zombie;
+import zombieplanner.simulator.ZombieSimulator.MoveAction;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Runs a {@link RiskAverseZombiePlanner} on a dedicated background thread, so
+ * the simulation doesn't have to wait for replanning.
+ *
+ * Each call to {@link #getAction} hands the latest observed state to the
+ * planning thread (replacing any older state it hasn't started on yet) and
+ * returns right away with the next step of the most recently committed plan,
+ * so the simulator keeps stepping while the replan runs. Only when there is
+ * no plan to follow (before the first one, or once the human has left it)
+ * does it wait, at most the configured deadline, for the result; if that
+ * isn't ready in time either, the human waits in place. Every observed state
+ * gets a version stamp, so a plan computed from an older state is never
+ * mistaken for a fresh one.
+ *
+ * Stun decisions only look at the visible zombies, so they are made right
+ * away on the caller's thread.
+ *
+ * The planning thread is started by the first call to {@link #getAction},
+ * and stops by itself once it has had nothing to do for
+ * {@link #IDLE_TIMEOUT}, so planners that are simply dropped (like the ones
+ * experiment workers make) don't leave threads behind. It starts again if
+ * the planner is used again.
+ *
+ * @author Tim Vergenz
+ */
+public class AsyncZombiePlanner implements ZombiePlanner {
+
+	private final RiskAverseZombiePlanner delegate;
+	private final long deadline;
+
+	private final Object lock = new Object();
+	private Thread worker;
+	private boolean shutdown = false;
+	private boolean busy = false;
+
+	private long version = 0;
+	private Request request;
+	private Committed committed;
+
+	/**
+	 * State observed by the simulator, with positions copied so the
+	 * planning thread never reads zombies the simulator is moving.
+	 */
+	private static class Request {
+		final long version;
+		final IntCoord from;
+		final Set<Zombie> zombies;
+
+		Request(long version, IntCoord from, Set<Zombie> zombies) {
+			this.version = version;
+			this.from = from;
+			this.zombies = zombies;
+		}
+	}
+
+	/**
+	 * A finished plan. path[0] is the position it was planned from; it is
+	 * empty if the goal was unreachable.
+	 */
+	private static class Committed {
+		final long version;
+		final int[] path;
+		final RuntimeException error;
+		int pos = 0;
+
+		Committed(long version, int[] path, RuntimeException error) {
+			this.version = version;
+			this.path = path;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Default for how long {@link #getAction} waits for a fresh plan when it
+	 * has none to follow, in nanoseconds.
+	 */
+	public static final long DEFAULT_DEADLINE = 100000000L;
+
+	/**
+	 * How long the planning thread waits for work before stopping, in
+	 * nanoseconds.
+	 */
+	public static final long IDLE_TIMEOUT = 1000000000L;
+
+	public AsyncZombiePlanner(RiskAverseZombiePlanner delegate) {
+		this(delegate, DEFAULT_DEADLINE);
+	}
+
+	/**
+	 * @param delegate the planner to run in the background
+	 * @param deadline the longest {@link #getAction} may wait for a fresh
+	 *        plan when it has none to follow, in nanoseconds
+	 */
+	public AsyncZombiePlanner(RiskAverseZombiePlanner delegate, long deadline) {
+		this.delegate = delegate;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Start the planning thread if it isn't running. Call holding the lock.
+	 */
+	private void startWorker() {
+		if (worker != null)
+			return;
+		worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				work();
+			}
+		}, "zombie-planner");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Get the planning thread, or null if it isn't running.
+	 */
+	Thread getWorker() {
+		synchronized (lock) {
+			return worker;
+		}
+	}
+
+	/**
+	 * Wait for the planning thread to go idle and drop queued work, so the
+	 * delegate can safely be touched from the caller's thread.
+	 */
+	private void quiesce() throws InterruptedException {
+		request = null;
+		while (busy)
+			lock.wait();
+	}
+
+	@Override
+	public void initialize(World world) {
+		synchronized (lock) {
+			try {
+				quiesce();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while stopping planner", e);
+			}
+			delegate.initialize(world);
+			committed = null;
+		}
+	}
+
+	@Override
+	public void setGoal(IntCoord goal) {
+		synchronized (lock) {
+			try {
+				quiesce();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while stopping planner", e);
+			}
+			delegate.setGoal(goal);
+			committed = null;
+		}
+	}
+
+	@Override
+	public Action getAction(IntCoord from, Set<Zombie> visibleZombies) {
+		Action stun = delegate.getStunAction(from, visibleZombies);
+		if (stun != null)
+			return stun;
+
+		Set<Zombie> snapshot = Sets.newHashSet();
+		for (Zombie zombie : visibleZombies)
+			snapshot.add(zombie.snapshot());
+
+		int width = delegate.map.size(0);
+		int curr = (int)from.get(0) + (int)from.get(1) * width;
+
+		Committed plan;
+		long v;
+		synchronized (lock) {
+			if (shutdown)
+				throw new IllegalStateException("Planner has been shut down");
+			startWorker();
+			v = ++version;
+			request = new Request(v, from, snapshot);
+			lock.notifyAll();
+
+			// follow the committed plan if we can, otherwise wait for this one
+			if (!canFollow(committed, curr)) {
+				long end = System.nanoTime() + deadline;
+				try {
+					while (committed == null || committed.version != v) {
+						long left = end - System.nanoTime();
+						if (left <= 0)
+							break;
+						lock.wait(left / 1000000, (int)(left % 1000000));
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			plan = committed;
+		}
+
+		if (plan == null)
+			return MoveAction.NONE;
+		if (plan.error != null)
+			throw plan.error;
+
+		if (plan.version == v && plan.path.length == 0)
+			return null; // fresh answer: the goal can't be reached
+
+		// find where we are on the plan (normally at or just past the last spot)
+		for (int k = plan.pos; k < plan.path.length; k++) {
+			if (plan.path[k] == curr) {
+				plan.pos = k;
+				if (k + 1 >= plan.path.length)
+					return (plan.version == v) ? null : MoveAction.NONE;
+				int next = plan.path[k + 1];
+				return RiskAverseZombiePlanner.moveToward(from,
+						new IntCoord(next % width, next / width));
+			}
+		}
+		return MoveAction.NONE;
+	}
+
+	/**
+	 * Whether a plan has a step to take from cell curr.
+	 */
+	private static boolean canFollow(Committed plan, int curr) {
+		if (plan == null || plan.error != null)
+			return false;
+		for (int k = plan.pos; k + 1 < plan.path.length; k++)
+			if (plan.path[k] == curr)
+				return true;
+		return false;
+	}
+
+	private void work() {
+		while (true) {
+			Request r;
+			synchronized (lock) {
+				long end = System.nanoTime() + IDLE_TIMEOUT;
+				try {
+					while (request == null && !shutdown) {
+						long left = end - System.nanoTime();
+						if (left <= 0)
+							break;
+						lock.wait(left / 1000000, (int)(left % 1000000));
+					}
+				} catch (InterruptedException e) {
+					worker = null;
+					return;
+				}
+				if (shutdown || request == null) {
+					worker = null;
+					return;
+				}
+				r = request;
+				request = null;
+				busy = true;
+			}
+
+			Committed c;
+			try {
+				c = plan(r);
+			} catch (RuntimeException e) {
+				c = new Committed(r.version, new int[0], e);
+			}
+
+			synchronized (lock) {
+				committed = c;
+				busy = false;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private Committed plan(Request r) {
+		int width = delegate.map.size(0);
+		IntCoord next = delegate.nextStep(r.from, r.zombies);
+		if (next == null)
+			return new Committed(r.version, new int[0], null);
+
+		// materialize the plan here, off the simulator's thread
+		List<IntCoord> rest = delegate.getPlan();
+		if (rest == null)
+			rest = Lists.newArrayList(next);
+		int[] path = new int[rest.size() + 1];
+		path[0] = (int)r.from.get(0) + (int)r.from.get(1) * width;
+		for (int k = 0; k < rest.size(); k++)
+			path[k + 1] = (int)rest.get(k).get(0) + (int)rest.get(k).get(1) * width;
+		return new Committed(r.version, path, null);
+	}
+
+	/**
+	 * Get the remaining part of the most recently committed plan, not
+	 * including the current position.
+	 */
+	public List<IntCoord> getPlan() {
+		Committed plan;
+		synchronized (lock) {
+			plan = committed;
+		}
+		if (plan == null || plan.pos + 1 >= plan.path.length)
+			return null;
+		int width = delegate.map.size(0);
+		List<IntCoord> list = Lists.newArrayList();
+		for (int k = plan.pos + 1; k < plan.path.length; k++)
+			list.add(new IntCoord(plan.path[k] % width, plan.path[k] / width));
+		return list;
+	}
+
+	/**
+	 * Stop the planning thread now rather than once it has been idle for
+	 * {@link #IDLE_TIMEOUT}. The planner can't be used afterwards.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			shutdown = true;
+			lock.notifyAll();
+		}
+	}
+
+}
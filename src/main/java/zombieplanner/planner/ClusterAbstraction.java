@@ -0,0 +1,465 @@
+package zombieplanner.planner;
+
+import java.util.Arrays;
+
+import zombieplanner.simulator.World;
+
+import com.google.common.base.Supplier;
+
+/**
+ * An HPA*-style abstraction of a {@link RiskCostField}: the grid is cut into
+ * square clusters, each contiguous walkable stretch of a border between two
+ * clusters gets one entrance pair at its middle, and the risk-weighted cost
+ * between every pair of entrances inside a cluster is precomputed.
+ *
+ * Queries search this small abstract graph first, then refine the route with
+ * a cell-level search that may only use the clusters the abstract route passed
+ * through. When cells of the cost field change, only the affected clusters
+ * (and the borders they share) are rebuilt, lazily on the next query.
+ *
+ * @author Tim Vergenz
+ */
+public class ClusterAbstraction implements RiskCostField.Listener, World.Layer {
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+
+	private final RiskCostField costs;
+	private final int width, height, clusterSize, clustersX, clustersY;
+
+	// transitions across the border to the right of / below each cluster,
+	// as pairs of cells {inside, outside, inside, outside, ...}
+	private final int[][] rightBorders, lowerBorders;
+
+	// per cluster: entrance cells, and costs between them (row = from)
+	private final int[][] entrances;
+	private final double[][] intra;
+	// per cell: index in its cluster's entrance list, or -1
+	private final int[] slot;
+
+	private final boolean[] dirty;
+	private boolean anyDirty = false;
+	private int version = 0;
+
+	// scratch space for cell-level searches
+	private final double[] dist;
+	private final int[] parent, stamp;
+	private int currentStamp = 0;
+	// scratch space for abstract searches
+	private final double[] absDist;
+	private final int[] absParent, absStamp;
+	private int currentAbsStamp = 0;
+	private final int[] corridor;
+	private int corridorStamp = 0;
+	private final IndexedKeyHeap heap;
+
+	/**
+	 * Get an abstraction of the given cost field shared by everything using
+	 * the world, building it if necessary. It stays in sync with the field by
+	 * listening for changes, until the world drops it.
+	 */
+	public static ClusterAbstraction of(World world, final RiskCostField costs, final int clusterSize) {
+		return world.getLayer(Arrays.<Object>asList(ClusterAbstraction.class, costs, clusterSize),
+				new Supplier<ClusterAbstraction>() {
+					@Override
+					public ClusterAbstraction get() {
+						ClusterAbstraction abs = new ClusterAbstraction(costs, clusterSize);
+						costs.addListener(abs);
+						return abs;
+					}
+				});
+	}
+
+	@Override
+	public void dropped() {
+		costs.removeListener(this);
+	}
+
+	/**
+	 * Build an abstraction. It won't notice later changes to the cost field
+	 * unless it is registered with {@link RiskCostField#addListener}.
+	 */
+	public ClusterAbstraction(RiskCostField costs, int clusterSize) {
+		this.costs = costs;
+		this.width = costs.getWidth();
+		this.height = costs.getHeight();
+		this.clusterSize = clusterSize;
+		this.clustersX = (width + clusterSize - 1) / clusterSize;
+		this.clustersY = (height + clusterSize - 1) / clusterSize;
+
+		int numClusters = clustersX * clustersY;
+		this.rightBorders = new int[numClusters][];
+		this.lowerBorders = new int[numClusters][];
+		this.entrances = new int[numClusters][];
+		this.intra = new double[numClusters][];
+		this.dirty = new boolean[numClusters];
+		this.corridor = new int[numClusters];
+
+		int n = costs.length();
+		this.slot = new int[n];
+		Arrays.fill(slot, -1);
+		this.dist = new double[n];
+		this.parent = new int[n];
+		this.stamp = new int[n];
+		this.absDist = new double[n];
+		this.absParent = new int[n];
+		this.absStamp = new int[n];
+		this.heap = new IndexedKeyHeap(n);
+
+		for (int c = 0; c < numClusters; c++) {
+			rightBorders[c] = findTransitions(c, true);
+			lowerBorders[c] = findTransitions(c, false);
+		}
+		for (int c = 0; c < numClusters; c++)
+			buildCluster(c);
+	}
+
+	@Override
+	public synchronized void cellChanged(RiskCostField field, int i) {
+		int x = i % width, y = i / width;
+		markDirty(x / clusterSize, y / clusterSize);
+		// cells on a border also change the neighbor's entrances
+		if (x % clusterSize == 0) markDirty(x / clusterSize - 1, y / clusterSize);
+		if (x % clusterSize == clusterSize - 1) markDirty(x / clusterSize + 1, y / clusterSize);
+		if (y % clusterSize == 0) markDirty(x / clusterSize, y / clusterSize - 1);
+		if (y % clusterSize == clusterSize - 1) markDirty(x / clusterSize, y / clusterSize + 1);
+	}
+
+	@Override
+	public synchronized void allChanged(RiskCostField field) {
+		Arrays.fill(dirty, true);
+		anyDirty = true;
+	}
+
+	private void markDirty(int cx, int cy) {
+		if (cx >= 0 && cx < clustersX && cy >= 0 && cy < clustersY) {
+			dirty[cx + cy*clustersX] = true;
+			anyDirty = true;
+		}
+	}
+
+	/**
+	 * Rebuild every cluster that was invalidated since the last query.
+	 */
+	public synchronized void revalidate() {
+		if (!anyDirty)
+			return;
+		// borders first, since both clusters on a border read them
+		for (int c = 0; c < dirty.length; c++) {
+			if (!dirty[c])
+				continue;
+			int cx = c % clustersX, cy = c / clustersX;
+			rightBorders[c] = findTransitions(c, true);
+			lowerBorders[c] = findTransitions(c, false);
+			if (cx > 0) rightBorders[c - 1] = findTransitions(c - 1, true);
+			if (cy > 0) lowerBorders[c - clustersX] = findTransitions(c - clustersX, false);
+		}
+		// then every cluster touching a rebuilt border
+		boolean[] stale = new boolean[dirty.length];
+		for (int c = 0; c < dirty.length; c++) {
+			if (!dirty[c])
+				continue;
+			int cx = c % clustersX, cy = c / clustersX;
+			stale[c] = true;
+			if (cx > 0) stale[c - 1] = true;
+			if (cx < clustersX - 1) stale[c + 1] = true;
+			if (cy > 0) stale[c - clustersX] = true;
+			if (cy < clustersY - 1) stale[c + clustersX] = true;
+		}
+		for (int c = 0; c < stale.length; c++)
+			if (stale[c])
+				for (int e : entrances[c])
+					slot[e] = -1;
+		for (int c = 0; c < stale.length; c++)
+			if (stale[c])
+				buildCluster(c);
+		Arrays.fill(dirty, false);
+		anyDirty = false;
+		version++;
+	}
+
+	/**
+	 * Get a counter that changes whenever the abstraction is rebuilt, so
+	 * routes computed from an older version can be discarded.
+	 */
+	public synchronized int getVersion() {
+		revalidate();
+		return version;
+	}
+
+	/**
+	 * Find the entrance pairs on the right (or lower) border of a cluster:
+	 * one at the middle of each run of cells walkable on both sides.
+	 */
+	private int[] findTransitions(int c, boolean right) {
+		int cx = c % clustersX, cy = c / clustersX;
+		int x0 = cx * clusterSize, y0 = cy * clusterSize;
+		int length, step, inside, outside;
+		if (right) {
+			if (x0 + clusterSize >= width)
+				return new int[0];
+			inside = costs.index(x0 + clusterSize - 1, y0);
+			outside = inside + 1;
+			length = Math.min(clusterSize, height - y0);
+			step = width;
+		}
+		else {
+			if (y0 + clusterSize >= height)
+				return new int[0];
+			inside = costs.index(x0, y0 + clusterSize - 1);
+			outside = inside + width;
+			length = Math.min(clusterSize, width - x0);
+			step = 1;
+		}
+
+		int[] pairs = new int[2*length];
+		int count = 0, runStart = -1;
+		for (int k = 0; k <= length; k++) {
+			boolean open = k < length
+					&& costs.cost(inside + k*step) < INF
+					&& costs.cost(outside + k*step) < INF;
+			if (open && runStart < 0) {
+				runStart = k;
+			}
+			else if (!open && runStart >= 0) {
+				int mid = (runStart + k - 1) / 2;
+				pairs[count++] = inside + mid*step;
+				pairs[count++] = outside + mid*step;
+				runStart = -1;
+			}
+		}
+		return Arrays.copyOf(pairs, count);
+	}
+
+	/**
+	 * Collect a cluster's entrances from its four borders and compute the
+	 * costs between them.
+	 */
+	private void buildCluster(int c) {
+		int cx = c % clustersX, cy = c / clustersX;
+		int[] list = new int[16];
+		int n = 0;
+		int[][] sides = {
+			rightBorders[c],
+			lowerBorders[c],
+			(cx > 0) ? rightBorders[c - 1] : null,
+			(cy > 0) ? lowerBorders[c - clustersX] : null,
+		};
+		for (int s = 0; s < sides.length; s++) {
+			if (sides[s] == null)
+				continue;
+			// our own borders list our cells first; neighbors' list them second
+			for (int k = (s < 2) ? 0 : 1; k < sides[s].length; k += 2) {
+				int e = sides[s][k];
+				if (slot[e] >= 0)
+					continue;
+				if (n == list.length)
+					list = Arrays.copyOf(list, 2*n);
+				slot[e] = n;
+				list[n++] = e;
+			}
+		}
+		entrances[c] = Arrays.copyOf(list, n);
+
+		double[] costsBetween = new double[n*n];
+		for (int i = 0; i < n; i++) {
+			searchCluster(entrances[c][i], c, true);
+			for (int j = 0; j < n; j++)
+				costsBetween[i*n + j] = distance(entrances[c][j]);
+		}
+		intra[c] = costsBetween;
+	}
+
+	private int clusterOf(int i) {
+		return (i % width) / clusterSize + (i / width) / clusterSize * clustersX;
+	}
+
+	private double distance(int i) {
+		return (stamp[i] == currentStamp) ? dist[i] : INF;
+	}
+
+	/**
+	 * Dijkstra's search from (or, backwards, to) a cell, restricted to one
+	 * cluster. Results are read through {@link #distance(int)}.
+	 */
+	private void searchCluster(int source, int c, boolean forward) {
+		int x0 = (c % clustersX) * clusterSize, y0 = (c / clustersX) * clusterSize;
+		int x1 = Math.min(x0 + clusterSize, width), y1 = Math.min(y0 + clusterSize, height);
+		currentStamp++;
+		stamp[source] = currentStamp;
+		dist[source] = 0;
+		heap.put(source, 0, 0);
+		while (!heap.isEmpty()) {
+			int u = heap.poll();
+			int x = u % width, y = u / width;
+			if (x > x0) relaxLocal(u, u - 1, forward);
+			if (x < x1 - 1) relaxLocal(u, u + 1, forward);
+			if (y > y0) relaxLocal(u, u - width, forward);
+			if (y < y1 - 1) relaxLocal(u, u + width, forward);
+		}
+	}
+
+	private void relaxLocal(int u, int v, boolean forward) {
+		double d = dist[u] + (forward ? costs.edgeCost(u, v) : costs.edgeCost(v, u));
+		if (d < distance(v)) {
+			stamp[v] = currentStamp;
+			dist[v] = d;
+			heap.put(v, d, 0);
+		}
+	}
+
+	private double h(int a, int b) {
+		return ProbabilisticGridDStar.CONSTANT
+				* (Math.abs(a % width - b % width) + Math.abs(a / width - b / width));
+	}
+
+	/**
+	 * Find a route between two cells, given by linear index.
+	 * @return the cells of the route including both ends, or null if the goal
+	 *         can't be reached
+	 */
+	public synchronized int[] plan(int start, int goal) {
+		revalidate();
+		if (costs.cost(start) == INF || costs.cost(goal) == INF)
+			return null;
+
+		int sc = clusterOf(start), gc = clusterOf(goal);
+
+		// connect the start and goal to the entrances of their clusters
+		searchCluster(start, sc, true);
+		double[] fromStart = new double[entrances[sc].length];
+		for (int j = 0; j < fromStart.length; j++)
+			fromStart[j] = distance(entrances[sc][j]);
+		double direct = (sc == gc) ? distance(goal) : INF;
+		searchCluster(goal, gc, false);
+		double[] toGoal = new double[entrances[gc].length];
+		for (int j = 0; j < toGoal.length; j++)
+			toGoal[j] = distance(entrances[gc][j]);
+
+		if (!searchAbstract(start, goal, sc, gc, fromStart, toGoal, direct))
+			return null;
+
+		// the clusters visited by the abstract route form the corridor
+		corridorStamp++;
+		for (int u = goal; u != start; u = absParent[u])
+			corridor[clusterOf(u)] = corridorStamp;
+		corridor[sc] = corridorStamp;
+
+		return refine(start, goal);
+	}
+
+	private double absDistance(int i) {
+		return (absStamp[i] == currentAbsStamp) ? absDist[i] : INF;
+	}
+
+	private void relaxAbstract(int u, int v, double cost, int goal) {
+		double d = absDist[u] + cost;
+		if (d < absDistance(v)) {
+			absStamp[v] = currentAbsStamp;
+			absDist[v] = d;
+			absParent[v] = u;
+			heap.put(v, d + h(v, goal), d);
+		}
+	}
+
+	/**
+	 * A* over entrances, with the start and goal as extra nodes.
+	 */
+	private boolean searchAbstract(int start, int goal, int sc, int gc,
+			double[] fromStart, double[] toGoal, double direct) {
+		currentAbsStamp++;
+		absStamp[start] = currentAbsStamp;
+		absDist[start] = 0;
+		heap.put(start, h(start, goal), 0);
+		while (!heap.isEmpty()) {
+			int u = heap.poll();
+			if (u == goal) {
+				heap.clear();
+				return true;
+			}
+			if (u == start) {
+				for (int j = 0; j < fromStart.length; j++)
+					if (fromStart[j] < INF)
+						relaxAbstract(u, entrances[sc][j], fromStart[j], goal);
+				if (direct < INF)
+					relaxAbstract(u, goal, direct, goal);
+			}
+			if (slot[u] < 0)
+				continue;
+
+			int c = clusterOf(u), k = slot[u], n = entrances[c].length;
+			for (int j = 0; j < n; j++)
+				if (j != k && intra[c][k*n + j] < INF)
+					relaxAbstract(u, entrances[c][j], intra[c][k*n + j], goal);
+			if (c == gc && toGoal[k] < INF)
+				relaxAbstract(u, goal, toGoal[k], goal);
+			relaxAcross(u, rightBorders[c], goal);
+			relaxAcross(u, lowerBorders[c], goal);
+			int cx = c % clustersX, cy = c / clustersX;
+			if (cx > 0) relaxAcross(u, rightBorders[c - 1], goal);
+			if (cy > 0) relaxAcross(u, lowerBorders[c - clustersX], goal);
+		}
+		return false;
+	}
+
+	private void relaxAcross(int u, int[] pairs, int goal) {
+		for (int k = 0; k < pairs.length; k += 2) {
+			if (pairs[k] == u)
+				relaxAbstract(u, pairs[k + 1], costs.edgeCost(u, pairs[k + 1]), goal);
+			else if (pairs[k + 1] == u)
+				relaxAbstract(u, pairs[k], costs.edgeCost(u, pairs[k]), goal);
+		}
+	}
+
+	/**
+	 * A* at the cell level, restricted to the current corridor of clusters.
+	 */
+	private int[] refine(int start, int goal) {
+		currentStamp++;
+		stamp[start] = currentStamp;
+		dist[start] = 0;
+		parent[start] = -1;
+		heap.put(start, h(start, goal), 0);
+		while (!heap.isEmpty()) {
+			int u = heap.poll();
+			if (u == goal)
+				break;
+			int x = u % width, y = u / width;
+			if (x > 0) relaxCorridor(u, u - 1, goal);
+			if (x < width - 1) relaxCorridor(u, u + 1, goal);
+			if (y > 0) relaxCorridor(u, u - width, goal);
+			if (y < height - 1) relaxCorridor(u, u + width, goal);
+		}
+		heap.clear();
+		if (distance(goal) == INF)
+			return null;
+
+		int n = 1;
+		for (int u = goal; u != start; u = parent[u])
+			n++;
+		int[] path = new int[n];
+		for (int u = goal; n > 0; u = parent[u])
+			path[--n] = u;
+		return path;
+	}
+
+	private void relaxCorridor(int u, int v, int goal) {
+		if (corridor[clusterOf(v)] != corridorStamp)
+			return;
+		double d = dist[u] + costs.edgeCost(u, v);
+		if (d < distance(v)) {
+			stamp[v] = currentStamp;
+			dist[v] = d;
+			parent[v] = u;
+			heap.put(v, d + h(v, goal), d);
+		}
+	}
+
+	public RiskCostField getCosts() {
+		return costs;
+	}
+
+	public int getClusterSize() {
+		return clusterSize;
+	}
+
+}
@@ -0,0 +1,414 @@
+package zombieplanner.planner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import robotutils.data.IntCoord;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A D* Lite planner over a 4-connected grid whose per-cell entry costs come
+ * from a {@link RiskCostField}.
+ *
+ * Unlike {@link robotutils.planning.GridDStar}, all search state (g and rhs
+ * values, priority queue keys) lives in primitive arrays indexed by the linear
+ * cell index, so replanning does not allocate per visited cell.
+ *
+ * The search runs backwards from the goal, so g values are costs-to-goal and
+ * stay valid as the start moves. It can also be seeded from a shared
+ * {@link RiskDistanceField}, in which case it only does incremental repair
+ * work once costs change.
+ *
+ * @author Tim Vergenz
+ */
+public class GridDStarLite {
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+
+	protected final RiskCostField costs;
+	protected final int width, height;
+
+	private final double[] g, rhs;
+	private final IndexedKeyHeap open;
+
+	// extra per-cell entry cost on top of the cost field; allocated on first use
+	private double[] extra;
+
+	private int start, goal;
+	private double km = 0;
+
+	// cells flagged since the last repair, to recompute once each before it
+	private final boolean[] flagged;
+	private int[] changed = new int[64];
+	private int changedCount = 0;
+
+	// landmark bounds for the heuristic, if any, and whether they are still
+	// in use (they aren't once the costs change under them)
+	private final LandmarkHeuristic landmarks;
+	private boolean useLandmarks;
+
+	public GridDStarLite(RiskCostField costs, IntCoord start, IntCoord goal) {
+		this(costs, start, goal, null);
+	}
+
+	/**
+	 * Create a planner whose heuristic uses landmark bounds, which must have
+	 * been computed for the same cost field.
+	 */
+	public GridDStarLite(RiskCostField costs, IntCoord start, IntCoord goal,
+			LandmarkHeuristic landmarks) {
+		this(costs, start, costs.index((int)goal.get(0), (int)goal.get(1)), null, landmarks);
+	}
+
+	/**
+	 * Create a planner whose search starts out already complete, by copying
+	 * the costs-to-goal from a precomputed {@link RiskDistanceField}. Until
+	 * costs change, each replan then only reads the field. The distances must
+	 * agree with {@link #c(int, int)}.
+	 */
+	public GridDStarLite(RiskDistanceField distances, IntCoord start) {
+		this(distances.getCosts(), start, distances.getGoal(), distances, null);
+	}
+
+	private GridDStarLite(RiskCostField costs, IntCoord start, int goal, RiskDistanceField seed,
+			LandmarkHeuristic landmarks) {
+		if (landmarks != null && landmarks.getCosts() != costs)
+			throw new IllegalArgumentException("Landmarks were computed for a different cost field.");
+		this.costs = costs;
+		this.landmarks = landmarks;
+		this.useLandmarks = (landmarks != null && !landmarks.isStale());
+		this.width = costs.getWidth();
+		this.height = costs.getHeight();
+		this.open = new IndexedKeyHeap(costs.length());
+		this.flagged = new boolean[costs.length()];
+		this.start = index(start);
+		this.goal = goal;
+
+		if (seed != null) {
+			// every cell is locally consistent, so the open list stays empty
+			this.g = seed.copyDistances();
+			this.rhs = seed.copyDistances();
+		}
+		else {
+			this.g = new double[costs.length()];
+			this.rhs = new double[costs.length()];
+			Arrays.fill(g, INF);
+			Arrays.fill(rhs, INF);
+			rhs[goal] = 0;
+			open.put(goal, h(this.start, goal), 0);
+		}
+	}
+
+	/**
+	 * Cost of moving from cell a to the adjacent cell b. Subclasses may
+	 * override this to change the cost model, but must call
+	 * {@link #flagChange(int)} whenever the value changes after planning began.
+	 */
+	protected double c(int a, int b) {
+		double cost = costs.edgeCost(a, b);
+		return (extra == null) ? cost : cost + extra[b];
+	}
+
+	/**
+	 * Set an extra cost for entering a cell, on top of the shared cost field
+	 * (e.g. for risks only this planner knows about). Only flags the cell as
+	 * changed if the value differs from the current one.
+	 */
+	public void setExtraCost(int i, double cost) {
+		if (extra == null) {
+			if (cost == 0)
+				return;
+			extra = new double[costs.length()];
+		}
+		if (extra[i] != cost) {
+			extra[i] = cost;
+			flagChange(i);
+		}
+	}
+
+	public double getExtraCost(int i) {
+		return (extra == null) ? 0 : extra[i];
+	}
+
+	/**
+	 * Admissible estimate of the cost from cell a to cell b. Every cell costs
+	 * at least {@link ProbabilisticGridDStar#CONSTANT} to enter; landmark
+	 * bounds are used too if the planner has them and they are current.
+	 */
+	protected double h(int a, int b) {
+		if (useLandmarks)
+			return landmarks.h(a, b);
+		int dx = a % width - b % width;
+		int dy = a / width - b / width;
+		return ProbabilisticGridDStar.CONSTANT * (Math.abs(dx) + Math.abs(dy));
+	}
+
+	/**
+	 * Move the start of the search (i.e. the robot's current position).
+	 */
+	public void updateStart(IntCoord start) {
+		updateStart(index(start));
+	}
+
+	public void updateStart(int start) {
+		checkHeuristic();
+		// keep keys already in the queue valid lower bounds
+		km += h(this.start, start);
+		this.start = start;
+	}
+
+	/**
+	 * Notify the planner that the cost of entering (or leaving) a cell has
+	 * changed. Only the cell and its neighbors are invalidated; the next call
+	 * to {@link #plan()} repairs the search incrementally. The invalidated
+	 * cells are recomputed when the repair starts, once each however many
+	 * neighboring cells changed.
+	 */
+	public void flagChange(int i) {
+		int x = i % width, y = i / width;
+		flag(i);
+		if (x > 0) flag(i - 1);
+		if (x < width - 1) flag(i + 1);
+		if (y > 0) flag(i - width);
+		if (y < height - 1) flag(i + width);
+	}
+
+	private void flag(int u) {
+		if (flagged[u])
+			return;
+		flagged[u] = true;
+		if (changedCount == changed.length)
+			changed = Arrays.copyOf(changed, 2*changedCount);
+		changed[changedCount++] = u;
+	}
+
+	private void recomputeFlagged() {
+		for (int k = 0; k < changedCount; k++) {
+			int u = changed[k];
+			flagged[u] = false;
+			recompute(u);
+		}
+		changedCount = 0;
+	}
+
+	public void flagChange(int x, int y) {
+		flagChange(costs.index(x, y));
+	}
+
+	/**
+	 * Drop the landmark bounds once the cost field has changed since they
+	 * were computed, as they may no longer be admissible. Keys in the open
+	 * list were computed with them, so they are all recomputed with the
+	 * Manhattan bound (and km starts over) to keep the queue consistent.
+	 */
+	private void checkHeuristic() {
+		if (!useLandmarks || !landmarks.isStale())
+			return;
+		useLandmarks = false;
+		km = 0;
+		int n = open.size();
+		int[] rekey = new int[n];
+		for (int p = 0; p < n; p++)
+			rekey[p] = open.elementAt(p);
+		for (int p = 0; p < n; p++)
+			updateVertex(rekey[p]);
+	}
+
+	private void recompute(int u) {
+		if (u != goal)
+			rhs[u] = minSucc(u);
+		updateVertex(u);
+	}
+
+	/**
+	 * Get min over successors s of c(u, s) + g(s).
+	 */
+	private double minSucc(int u) {
+		int x = u % width, y = u / width;
+		double min = INF;
+		if (x > 0) min = Math.min(min, c(u, u - 1) + g[u - 1]);
+		if (x < width - 1) min = Math.min(min, c(u, u + 1) + g[u + 1]);
+		if (y > 0) min = Math.min(min, c(u, u - width) + g[u - width]);
+		if (y < height - 1) min = Math.min(min, c(u, u + width) + g[u + width]);
+		return min;
+	}
+
+	private void updateVertex(int u) {
+		if (g[u] != rhs[u]) {
+			double m = Math.min(g[u], rhs[u]);
+			open.put(u, m + h(start, u) + km, m);
+		}
+		else {
+			open.remove(u);
+		}
+	}
+
+	/**
+	 * Repair the search until the start cell is locally consistent.
+	 */
+	public void computeShortestPath() {
+		computeShortestPath(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Repair the search until the start cell is locally consistent, or until
+	 * a number of cells have been expanded. Work left over stays queued for
+	 * the next call.
+	 * @return true if the repair is done
+	 */
+	public boolean computeShortestPath(int maxExpansions) {
+		checkHeuristic();
+		recomputeFlagged();
+		for (int expansions = 0; ; expansions++) {
+			double m = Math.min(g[start], rhs[start]);
+			double s1 = m + h(start, start) + km;
+			if (!(IndexedKeyHeap.less(open.topKey1(), open.topKey2(), s1, m) || rhs[start] > g[start]))
+				return true;
+			if (expansions >= maxExpansions)
+				return false;
+
+			int u = open.peek();
+			double old1 = open.topKey1(), old2 = open.topKey2();
+			double mu = Math.min(g[u], rhs[u]);
+			double new1 = mu + h(start, u) + km;
+			if (IndexedKeyHeap.less(old1, old2, new1, mu)) {
+				open.put(u, new1, mu);
+			}
+			else if (g[u] > rhs[u]) {
+				g[u] = rhs[u];
+				open.remove(u);
+				relaxPreds(u);
+			}
+			else {
+				double gOld = g[u];
+				g[u] = INF;
+				updateVertex(u);
+				int x = u % width, y = u / width;
+				if (x > 0) resetPred(u - 1, u, gOld);
+				if (x < width - 1) resetPred(u + 1, u, gOld);
+				if (y > 0) resetPred(u - width, u, gOld);
+				if (y < height - 1) resetPred(u + width, u, gOld);
+			}
+		}
+	}
+
+	private void relaxPreds(int u) {
+		int x = u % width, y = u / width;
+		if (x > 0) relax(u - 1, u);
+		if (x < width - 1) relax(u + 1, u);
+		if (y > 0) relax(u - width, u);
+		if (y < height - 1) relax(u + width, u);
+	}
+
+	private void relax(int s, int u) {
+		if (s != goal) {
+			double v = c(s, u) + g[u];
+			if (v < rhs[s])
+				rhs[s] = v;
+		}
+		updateVertex(s);
+	}
+
+	private void resetPred(int s, int u, double gOld) {
+		if (s != goal && rhs[s] == c(s, u) + gOld)
+			rhs[s] = minSucc(s);
+		updateVertex(s);
+	}
+
+	/**
+	 * Replan and return the full path from the current start to the goal
+	 * (including both), or an empty list if the goal is unreachable.
+	 */
+	public List<IntCoord> plan() {
+		return plan(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Replan, expanding at most a number of cells, and return the path found
+	 * by walking down the g values as they are; the path may be empty if the
+	 * repair isn't done.
+	 * @see #computeShortestPath(int)
+	 */
+	public List<IntCoord> plan(int maxExpansions) {
+		computeShortestPath(maxExpansions);
+		List<IntCoord> path = Lists.newArrayList();
+		if (rhs[start] == INF)
+			return path;
+
+		int curr = start;
+		path.add(coord(curr));
+		while (curr != goal) {
+			curr = bestSuccessor(curr);
+			if (curr < 0 || path.size() > g.length)
+				return Lists.newArrayList();
+			path.add(coord(curr));
+		}
+		return path;
+	}
+
+	/**
+	 * Replan and return only the linear index of the best cell to move to from
+	 * the current start, or -1 if the start is the goal or the goal is
+	 * unreachable. Unlike {@link #plan()}, this does not walk or allocate the
+	 * rest of the path.
+	 */
+	public int nextStep() {
+		return nextStep(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Replan, expanding at most a number of cells, and return the best cell
+	 * to move to by the g values as they are. If the repair isn't done, the
+	 * rest of it carries over to the next call, and the step may not be on
+	 * an optimal path; -1 is only returned once the repair is done, so it
+	 * always means there is nowhere to go.
+	 * @see #computeShortestPath(int)
+	 */
+	public int nextStep(int maxExpansions) {
+		if (!computeShortestPath(maxExpansions)) {
+			int next = (start == goal) ? -1 : bestSuccessor(start);
+			if (next >= 0)
+				return next;
+			computeShortestPath();
+		}
+		if (start == goal || rhs[start] == INF)
+			return -1;
+		return bestSuccessor(start);
+	}
+
+	/**
+	 * Get the successor of u that minimizes c(u, s) + g(s), or -1 if no
+	 * successor leads to the goal.
+	 */
+	protected int bestSuccessor(int u) {
+		int x = u % width, y = u / width;
+		int best = -1;
+		double min = INF;
+		if (x > 0 && c(u, u - 1) + g[u - 1] < min) { min = c(u, u - 1) + g[u - 1]; best = u - 1; }
+		if (x < width - 1 && c(u, u + 1) + g[u + 1] < min) { min = c(u, u + 1) + g[u + 1]; best = u + 1; }
+		if (y > 0 && c(u, u - width) + g[u - width] < min) { min = c(u, u - width) + g[u - width]; best = u - width; }
+		if (y < height - 1 && c(u, u + width) + g[u + width] < min) { min = c(u, u + width) + g[u + width]; best = u + width; }
+		return best;
+	}
+
+	/**
+	 * Get the current cost-to-goal estimate of a cell.
+	 */
+	public double getG(int i) {
+		return g[i];
+	}
+
+	public RiskCostField getCosts() {
+		return costs;
+	}
+
+	protected int index(IntCoord c) {
+		return costs.index((int)c.get(0), (int)c.get(1));
+	}
+
+	protected IntCoord coord(int i) {
+		return new IntCoord(i % width, i / width);
+	}
+
+}
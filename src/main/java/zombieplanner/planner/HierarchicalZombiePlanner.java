@@ -0,0 +1,73 @@
+package zombieplanner.planner;
+
+import java.util.List;
+import java.util.Set;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.World;
+import zombieplanner.simulator.Zombie;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A risk-averse planner for large maps that plans over a
+ * {@link ClusterAbstraction} of the risk cost field instead of searching the
+ * whole grid. The route is computed once and followed until the human leaves
+ * it or the abstraction changes.
+ *
+ * Visible zombies are only handled by stunning (see
+ * {@link RiskAverseZombiePlanner#getAction}); they don't affect the route.
+ *
+ * @author Tim Vergenz
+ */
+public class HierarchicalZombiePlanner extends RiskAverseZombiePlanner {
+
+	public static final int CLUSTER_SIZE = 16;
+
+	private ClusterAbstraction abstraction;
+	private int[] route;
+	private int routePos;
+	private int routeVersion;
+
+	@Override
+	public void initialize(World world) {
+		super.initialize(world);
+		this.abstraction = null;
+		this.route = null;
+	}
+
+	@Override
+	protected IntCoord nextStep(IntCoord from, Set<Zombie> visibleZombies) {
+		if (abstraction == null) {
+			RiskCostField costs = RiskCostField.of(world, 10000);
+			abstraction = ClusterAbstraction.of(world, costs, CLUSTER_SIZE);
+		}
+		int width = map.size(0);
+		int start = (int)from.get(0) + (int)from.get(1) * width;
+
+		if (route == null || routePos >= route.length || route[routePos] != start
+				|| routeVersion != abstraction.getVersion()) {
+			routeVersion = abstraction.getVersion();
+			route = abstraction.plan(start, (int)goal.get(0) + (int)goal.get(1) * width);
+			routePos = 0;
+			if (route == null)
+				return null;
+		}
+		if (routePos + 1 >= route.length)
+			return null;
+		int next = route[++routePos];
+		return new IntCoord(next % width, next / width);
+	}
+
+	@Override
+	public List<IntCoord> getPlan() {
+		if (route == null)
+			return null;
+		int width = map.size(0);
+		List<IntCoord> plan = Lists.newArrayListWithCapacity(route.length - routePos);
+		for (int k = routePos; k < route.length; k++)
+			plan.add(new IntCoord(route[k] % width, route[k] / width));
+		return plan;
+	}
+
+}
@@ -0,0 +1,179 @@
+package zombieplanner.planner;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap over the integers {@code 0..capacity-1} (cell indices),
+ * ordered lexicographically by a two-part key {@code [k1; k2]} as used by
+ * D* Lite. Keeps a position table so that membership tests, key updates and
+ * arbitrary removals run without searching and without allocating.
+ *
+ * @author Tim Vergenz
+ */
+public class IndexedKeyHeap {
+
+	private final int[] heap;
+	private final int[] pos;
+	private final double[] k1, k2;
+	private int size = 0;
+
+	public IndexedKeyHeap(int capacity) {
+		heap = new int[capacity];
+		pos = new int[capacity];
+		k1 = new double[capacity];
+		k2 = new double[capacity];
+		Arrays.fill(pos, -1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int i) {
+		return pos[i] >= 0;
+	}
+
+	/**
+	 * Get the element with the smallest key, without removing it.
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Get the first part of the smallest key, or positive infinity if empty.
+	 */
+	public double topKey1() {
+		return size == 0 ? Double.POSITIVE_INFINITY : k1[heap[0]];
+	}
+
+	/**
+	 * Get the second part of the smallest key, or positive infinity if empty.
+	 */
+	public double topKey2() {
+		return size == 0 ? Double.POSITIVE_INFINITY : k2[heap[0]];
+	}
+
+	public double key1(int i) {
+		return k1[i];
+	}
+
+	public double key2(int i) {
+		return k2[i];
+	}
+
+	/**
+	 * Remove and return the element with the smallest key.
+	 */
+	public int poll() {
+		int top = heap[0];
+		remove(top);
+		return top;
+	}
+
+	/**
+	 * Insert an element, or move it to its new position if it is already in
+	 * the heap (whether the key went up or down).
+	 */
+	public void put(int i, double key1, double key2) {
+		int p = pos[i];
+		if (p < 0) {
+			p = size++;
+			heap[p] = i;
+			pos[i] = p;
+			k1[i] = key1;
+			k2[i] = key2;
+			siftUp(p);
+		}
+		else {
+			boolean decreased = less(key1, key2, k1[i], k2[i]);
+			k1[i] = key1;
+			k2[i] = key2;
+			if (decreased)
+				siftUp(p);
+			else
+				siftDown(p);
+		}
+	}
+
+	/**
+	 * Remove an element if it is in the heap.
+	 */
+	public void remove(int i) {
+		int p = pos[i];
+		if (p < 0)
+			return;
+		pos[i] = -1;
+		int last = heap[--size];
+		if (p == size)
+			return;
+		heap[p] = last;
+		pos[last] = p;
+		siftUp(p);
+		siftDown(pos[last]);
+	}
+
+	/**
+	 * Remove all elements. Runs in time proportional to the current size.
+	 */
+	public void clear() {
+		for (int p = 0; p < size; p++)
+			pos[heap[p]] = -1;
+		size = 0;
+	}
+
+	/**
+	 * Get the element stored at the given heap position (0 &lt;= p &lt; size),
+	 * for iterating over the current contents in no particular order.
+	 */
+	public int elementAt(int p) {
+		return heap[p];
+	}
+
+	public static boolean less(double a1, double a2, double b1, double b2) {
+		return a1 < b1 || (a1 == b1 && a2 < b2);
+	}
+
+	private void siftUp(int p) {
+		int i = heap[p];
+		double i1 = k1[i], i2 = k2[i];
+		while (p > 0) {
+			int parent = (p - 1) >>> 1;
+			int j = heap[parent];
+			if (!less(i1, i2, k1[j], k2[j]))
+				break;
+			heap[p] = j;
+			pos[j] = p;
+			p = parent;
+		}
+		heap[p] = i;
+		pos[i] = p;
+	}
+
+	private void siftDown(int p) {
+		int i = heap[p];
+		double i1 = k1[i], i2 = k2[i];
+		int half = size >>> 1;
+		while (p < half) {
+			int child = 2*p + 1;
+			int c = heap[child];
+			int right = child + 1;
+			if (right < size && less(k1[heap[right]], k2[heap[right]], k1[c], k2[c])) {
+				child = right;
+				c = heap[child];
+			}
+			if (!less(k1[c], k2[c], i1, i2))
+				break;
+			heap[p] = c;
+			pos[c] = p;
+			p = child;
+		}
+		heap[p] = i;
+		pos[i] = p;
+	}
+
+}
@@ -0,0 +1,290 @@
+package zombieplanner.planner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import zombieplanner.simulator.World;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Landmark (ALT) lower bounds on the cost between any two cells of a
+ * {@link RiskCostField}.
+ *
+ * A handful of landmark cells are picked far apart from each other, and the
+ * exact costs to and from each landmark are computed for every cell. By the
+ * triangle inequality, d(a,b) >= d(a,L) - d(b,L) and d(a,b) >= d(L,b) - d(L,a)
+ * for any landmark L. With a large alpha these bounds are far tighter than
+ * the Manhattan distance, which only accounts for the constant part of the
+ * cost.
+ *
+ * The tables only depend on the cost field, so they are computed once and
+ * saved to a file named after a fingerprint of the costs (see
+ * {@link #of(World, RiskCostField, int)}). If the cost field changes
+ * afterwards, the bounds may no longer hold, and {@link #h(int, int)} falls
+ * back to the Manhattan bound; incremental planners using them should check
+ * {@link #isStale()} and re-key their queues when the heuristic changes.
+ *
+ * @author Tim Vergenz
+ */
+public class LandmarkHeuristic {
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+
+	/**
+	 * System property naming the directory landmark tables are saved in.
+	 */
+	public static final String DIR_PROPERTY = "zombieplanner.landmarks";
+
+	private static final int MAGIC = 0x5a4c4d4b; // "ZLMK"
+	private static final int FORMAT = 1;
+
+	private final RiskCostField costs;
+	private final int width;
+	private final int[] landmarks;
+	private final double[][] to, from;
+	private final int costsVersion;
+
+	/**
+	 * Get landmark tables with the given number of landmarks for a cost
+	 * field as it is now, shared by everything using the world. They are
+	 * loaded from the landmark directory if they were saved there before,
+	 * otherwise computed and saved.
+	 */
+	public static LandmarkHeuristic of(World world, final RiskCostField costs, final int count) {
+		return world.getLayer(Arrays.<Object>asList(LandmarkHeuristic.class, costs, costs.getVersion(), count),
+				new Supplier<LandmarkHeuristic>() {
+					@Override
+					public LandmarkHeuristic get() {
+						File file = new File(getDirectory(), "landmarks-" + count + "-"
+								+ Long.toHexString(fingerprint(costs)) + ".bin");
+						if (file.exists()) {
+							try {
+								return load(costs, file);
+							} catch (IOException e) {
+								e.printStackTrace();
+							}
+						}
+						LandmarkHeuristic lh = new LandmarkHeuristic(costs, count);
+						try {
+							lh.save(file);
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+						return lh;
+					}
+				});
+	}
+
+	public static File getDirectory() {
+		String dir = System.getProperty(DIR_PROPERTY);
+		if (dir == null)
+			return new File(System.getProperty("java.io.tmpdir"), "zombieplanner-landmarks");
+		return new File(dir);
+	}
+
+	/**
+	 * Compute the tables for a new set of landmarks. The first landmark is
+	 * the reachable cell farthest from the first open cell of the map; each
+	 * further one is the cell farthest from all landmarks picked so far.
+	 * Cells that can't be reached from the first landmark are never picked.
+	 */
+	public LandmarkHeuristic(RiskCostField costs, int count) {
+		this.costs = costs;
+		this.width = costs.getWidth();
+		this.costsVersion = costs.getVersion();
+		this.landmarks = new int[count];
+		this.to = new double[count][];
+		this.from = new double[count][];
+
+		int n = costs.length();
+		int first = 0;
+		while (first < n && costs.cost(first) == INF)
+			first++;
+		if (first == n)
+			throw new IllegalArgumentException("Map has no open cells.");
+
+		double[] seedDist = new double[n];
+		forward(first, seedDist);
+		double[] minDist = new double[n];
+		Arrays.fill(minDist, INF);
+		for (int k = 0; k < count; k++) {
+			double[] rank = (k == 0) ? seedDist : minDist;
+			int best = first;
+			for (int i = 0; i < n; i++)
+				if (seedDist[i] < INF && rank[i] > rank[best])
+					best = i;
+			landmarks[k] = best;
+			from[k] = new double[n];
+			forward(best, from[k]);
+			to[k] = new RiskDistanceField(costs, best).copyDistances();
+			for (int i = 0; i < n; i++)
+				minDist[i] = Math.min(minDist[i], from[k][i]);
+		}
+	}
+
+	private LandmarkHeuristic(RiskCostField costs, int[] landmarks, double[][] to, double[][] from) {
+		this.costs = costs;
+		this.width = costs.getWidth();
+		this.costsVersion = costs.getVersion();
+		this.landmarks = landmarks;
+		this.to = to;
+		this.from = from;
+	}
+
+	/**
+	 * Dijkstra search outwards from a cell, giving the costs from it to every
+	 * other cell.
+	 */
+	private void forward(int source, double[] dist) {
+		int height = costs.getHeight();
+		Arrays.fill(dist, INF);
+		IndexedKeyHeap open = new IndexedKeyHeap(dist.length);
+		dist[source] = 0;
+		open.put(source, 0, 0);
+		while (!open.isEmpty()) {
+			int u = open.poll();
+			int x = u % width, y = u / width;
+			if (x > 0) relax(open, dist, u, u - 1);
+			if (x < width - 1) relax(open, dist, u, u + 1);
+			if (y > 0) relax(open, dist, u, u - width);
+			if (y < height - 1) relax(open, dist, u, u + width);
+		}
+	}
+
+	private void relax(IndexedKeyHeap open, double[] dist, int u, int s) {
+		double d = dist[u] + costs.edgeCost(u, s);
+		if (d < dist[s]) {
+			dist[s] = d;
+			open.put(s, d, 0);
+		}
+	}
+
+	/**
+	 * Get a lower bound on the cost of moving from cell a to cell b: the best
+	 * of the landmark bounds and the Manhattan bound.
+	 */
+	public double h(int a, int b) {
+		double h = ProbabilisticGridDStar.CONSTANT
+				* (Math.abs(a % width - b % width) + Math.abs(a / width - b / width));
+		if (isStale())
+			return h;
+		for (int k = 0; k < landmarks.length; k++) {
+			h = Math.max(h, bound(to[k][a], to[k][b]));
+			h = Math.max(h, bound(from[k][b], from[k][a]));
+		}
+		return h;
+	}
+
+	/**
+	 * Lower bound x - y, where x and y are distances that may be infinite.
+	 */
+	private static double bound(double x, double y) {
+		if (y == INF)
+			return 0;
+		return x - y;
+	}
+
+	/**
+	 * Whether the cost field has changed since the tables were computed.
+	 */
+	public boolean isStale() {
+		return costsVersion != costs.getVersion();
+	}
+
+	public int[] getLandmarks() {
+		return Arrays.copyOf(landmarks, landmarks.length);
+	}
+
+	public RiskCostField getCosts() {
+		return costs;
+	}
+
+	/**
+	 * Hash of the dimensions and every cost in the field, to tell saved
+	 * tables apart.
+	 */
+	private static long fingerprint(RiskCostField costs) {
+		long h = 0xcbf29ce484222325L;
+		h = (h ^ costs.getWidth()) * 0x100000001b3L;
+		h = (h ^ costs.getHeight()) * 0x100000001b3L;
+		for (int i = 0; i < costs.length(); i++)
+			h = (h ^ Double.doubleToLongBits(costs.cost(i))) * 0x100000001b3L;
+		return h;
+	}
+
+	/**
+	 * Save the tables to a file, creating its directory if needed.
+	 */
+	public void save(File file) throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+
+		// write to a temporary file first so readers never see half a table
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeInt(costs.getWidth());
+			out.writeInt(costs.getHeight());
+			out.writeLong(fingerprint(costs));
+			out.writeInt(landmarks.length);
+			for (int k = 0; k < landmarks.length; k++) {
+				out.writeInt(landmarks[k]);
+				for (double d : to[k])
+					out.writeDouble(d);
+				for (double d : from[k])
+					out.writeDouble(d);
+			}
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file))
+				throw new IOException("Could not move " + tmp + " to " + file);
+		}
+	}
+
+	/**
+	 * Load tables saved by {@link #save(File)}.
+	 * @throws IOException if the file can't be read or was saved for a
+	 *         different cost field
+	 */
+	public static LandmarkHeuristic load(RiskCostField costs, File file) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT)
+				throw new IOException(file + " is not a landmark file.");
+			if (in.readInt() != costs.getWidth() || in.readInt() != costs.getHeight()
+					|| in.readLong() != fingerprint(costs))
+				throw new IOException(file + " was saved for a different cost field.");
+			int count = in.readInt();
+			int n = costs.length();
+			int[] landmarks = new int[count];
+			double[][] to = new double[count][n], from = new double[count][n];
+			for (int k = 0; k < count; k++) {
+				landmarks[k] = in.readInt();
+				for (int i = 0; i < n; i++)
+					to[k][i] = in.readDouble();
+				for (int i = 0; i < n; i++)
+					from[k][i] = in.readDouble();
+			}
+			return new LandmarkHeuristic(costs, landmarks, to, from);
+		} finally {
+			in.close();
+		}
+	}
+
+}
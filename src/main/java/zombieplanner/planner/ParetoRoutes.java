@@ -0,0 +1,289 @@
+package zombieplanner.planner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.ZombieMap;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The Pareto frontier of routes between two cells, trading off path length
+ * against summed risk {@code -log(1 - P(bad stuff in cell))} over the cells
+ * entered, found in a single bi-objective search.
+ *
+ * Since the cost model of {@link ProbabilisticGridDStar} is
+ * {@code CONSTANT * length + alpha * risk}, the optimal route for any alpha is
+ * on the frontier, and {@link #best(double)} just looks it up.
+ *
+ * The search goes layer by layer in path length: a cell gets a new label in
+ * layer L only if it can be reached in L steps with strictly less risk than in
+ * any fewer steps. Labels that can't beat the best route found to the goal so
+ * far (using exact risk-to-goal lower bounds) are pruned.
+ *
+ * @author Tim Vergenz
+ */
+public class ParetoRoutes {
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+
+	/**
+	 * Default for the smallest decrease in risk that counts as an
+	 * improvement; keeps routes with practically equal risk from piling up.
+	 */
+	public static final double DEFAULT_RESOLUTION = 1e-9;
+
+	private final int width;
+	private final int[] lengths;
+	private final double[] risks;
+	private final int[][] paths;
+
+	/**
+	 * Find the frontier of routes between two cells.
+	 * @param resolution smallest decrease in risk that makes a longer route
+	 *        worth keeping
+	 */
+	public static ParetoRoutes search(ZombieMap map, ProbabilityMap probDist,
+			IntCoord start, IntCoord goal, double resolution) {
+		return new Search(map, probDist, start, goal, resolution).run();
+	}
+
+	public static ParetoRoutes search(ZombieMap map, ProbabilityMap probDist,
+			IntCoord start, IntCoord goal) {
+		return search(map, probDist, start, goal, DEFAULT_RESOLUTION);
+	}
+
+	private ParetoRoutes(int width, int[] lengths, double[] risks, int[][] paths) {
+		this.width = width;
+		this.lengths = lengths;
+		this.risks = risks;
+		this.paths = paths;
+	}
+
+	/**
+	 * Get the number of routes on the frontier (zero if the goal can't be
+	 * reached). Routes are ordered by increasing length and decreasing risk.
+	 */
+	public int size() {
+		return lengths.length;
+	}
+
+	public int getLength(int k) {
+		return lengths[k];
+	}
+
+	public double getRisk(int k) {
+		return risks[k];
+	}
+
+	/**
+	 * Get the cost of route k under the given alpha.
+	 */
+	public double getCost(int k, double alpha) {
+		double cost = ProbabilisticGridDStar.CONSTANT * lengths[k];
+		return (alpha == 0) ? cost : cost + alpha * risks[k];
+	}
+
+	/**
+	 * Get the index of the cheapest route under the given alpha (the shortest
+	 * one on ties), or -1 if there is none.
+	 */
+	public int best(double alpha) {
+		int best = -1;
+		double min = INF;
+		for (int k = 0; k < lengths.length; k++) {
+			double cost = getCost(k, alpha);
+			if (cost < min) {
+				min = cost;
+				best = k;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Get route k, including the start and goal.
+	 */
+	public List<IntCoord> getPath(int k) {
+		List<IntCoord> path = Lists.newArrayListWithCapacity(paths[k].length);
+		for (int i : paths[k])
+			path.add(new IntCoord(i % width, i / width));
+		return path;
+	}
+
+	/**
+	 * Get route k as linear cell indices, including the start and goal.
+	 */
+	public int[] getIndexPath(int k) {
+		return Arrays.copyOf(paths[k], paths[k].length);
+	}
+
+	/**
+	 * State of a single search, dropped once the frontier is extracted.
+	 */
+	private static class Search {
+		private final int width, height, start, goal;
+		private final double resolution;
+		private final double[] risk;     // risk of entering each cell
+		private final double[] toGoal;   // least risk from each cell to the goal
+		private final double[] best;     // least risk found to each cell so far
+		private final int[] layer;       // layer of the newest label of each cell
+		private final int[] label;       // newest label of each cell
+
+		// labels
+		private int count = 0;
+		private int[] cell = new int[1024], parent = new int[1024];
+		private double[] lrisk = new double[1024];
+
+		Search(ZombieMap map, ProbabilityMap probDist, IntCoord start, IntCoord goal,
+				double resolution) {
+			if (probDist.dims() != 2 || probDist.size(0) != map.size(0) || probDist.size(1) != map.size(1))
+				throw new IllegalArgumentException("Zombie distribution doesn't match the map's size.");
+			this.width = map.size(0);
+			this.height = map.size(1);
+			this.start = (int)start.get(0) + (int)start.get(1) * width;
+			this.goal = (int)goal.get(0) + (int)goal.get(1) * width;
+			this.resolution = resolution;
+			int n = width * height;
+			this.risk = new double[n];
+			for (int i = 0; i < n; i++)
+				risk[i] = (map.typeOfLinear(i) == CellType.OBSTACLE) ? INF
+						: -Math.log(1.0 - probDist.getLinear(i));
+			this.toGoal = new double[n];
+			this.best = new double[n];
+			this.layer = new int[n];
+			this.label = new int[n];
+			Arrays.fill(best, INF);
+			Arrays.fill(layer, -1);
+		}
+
+		/**
+		 * Reverse Dijkstra on risk alone, for pruning.
+		 */
+		private void riskToGoal() {
+			Arrays.fill(toGoal, INF);
+			IndexedKeyHeap open = new IndexedKeyHeap(toGoal.length);
+			toGoal[goal] = 0;
+			open.put(goal, 0, 0);
+			while (!open.isEmpty()) {
+				int u = open.poll();
+				if (risk[u] == INF)
+					continue; // can't leave an obstacle
+				int x = u % width, y = u / width;
+				if (x > 0) relaxToGoal(open, u - 1, u);
+				if (x < width - 1) relaxToGoal(open, u + 1, u);
+				if (y > 0) relaxToGoal(open, u - width, u);
+				if (y < height - 1) relaxToGoal(open, u + width, u);
+			}
+		}
+
+		private void relaxToGoal(IndexedKeyHeap open, int s, int u) {
+			if (risk[s] == INF)
+				return;
+			double d = toGoal[u] + risk[u];
+			if (d < toGoal[s]) {
+				toGoal[s] = d;
+				open.put(s, d, 0);
+			}
+		}
+
+		private int addLabel(int c, int p, double r) {
+			if (count == cell.length) {
+				cell = Arrays.copyOf(cell, 2*count);
+				parent = Arrays.copyOf(parent, 2*count);
+				lrisk = Arrays.copyOf(lrisk, 2*count);
+			}
+			cell[count] = c;
+			parent[count] = p;
+			lrisk[count] = r;
+			return count++;
+		}
+
+		ParetoRoutes run() {
+			if (risk[start] == INF || risk[goal] == INF)
+				return new ParetoRoutes(width, new int[0], new double[0], new int[0][]);
+			riskToGoal();
+
+			List<Integer> goalLabels = Lists.newArrayList();
+			List<Integer> goalLengths = Lists.newArrayList();
+			double goalBest = INF;
+
+			int[] frontier = new int[64], next = new int[64];
+			int size = 0;
+			if (toGoal[start] < INF) {
+				best[start] = 0;
+				layer[start] = 0;
+				label[start] = addLabel(start, -1, 0);
+				frontier[size++] = label[start];
+			}
+
+			for (int L = 1; size > 0; L++) {
+				int nextSize = 0;
+				for (int k = 0; k < size; k++) {
+					int l = frontier[k];
+					int u = cell[l];
+					if (u == goal)
+						continue; // going on past the goal never helps
+					// a better route to the goal may have been found since
+					if (lrisk[l] + toGoal[u] >= goalBest - resolution)
+						continue;
+					int x = u % width, y = u / width;
+					for (int d = 0; d < 4; d++) {
+						int s;
+						if (d == 0) { if (x == 0) continue; s = u - 1; }
+						else if (d == 1) { if (x == width - 1) continue; s = u + 1; }
+						else if (d == 2) { if (y == 0) continue; s = u - width; }
+						else { if (y == height - 1) continue; s = u + width; }
+						double r = lrisk[l] + risk[s];
+						if (r >= best[s] - resolution || r + toGoal[s] >= goalBest - resolution)
+							continue;
+						best[s] = r;
+						if (layer[s] == L) {
+							// already reached in this layer; keep the better parent
+							parent[label[s]] = l;
+							lrisk[label[s]] = r;
+						}
+						else {
+							layer[s] = L;
+							label[s] = addLabel(s, l, r);
+							if (nextSize == next.length)
+								next = Arrays.copyOf(next, 2*nextSize);
+							next[nextSize++] = label[s];
+						}
+					}
+				}
+				if (layer[goal] == L) {
+					goalLabels.add(label[goal]);
+					goalLengths.add(L);
+					goalBest = lrisk[label[goal]];
+				}
+				int[] tmp = frontier;
+				frontier = next;
+				next = tmp;
+				size = nextSize;
+			}
+			if (start == goal) {
+				goalLabels.add(label[start]);
+				goalLengths.add(0);
+			}
+
+			int m = goalLabels.size();
+			int[] lengths = new int[m];
+			double[] risks = new double[m];
+			int[][] paths = new int[m][];
+			for (int k = 0; k < m; k++) {
+				int l = goalLabels.get(k);
+				lengths[k] = goalLengths.get(k);
+				risks[k] = lrisk[l];
+				paths[k] = new int[lengths[k] + 1];
+				for (int j = lengths[k]; j >= 0; j--, l = parent[l])
+					paths[k][j] = cell[l];
+			}
+			return new ParetoRoutes(width, lengths, risks, paths);
+		}
+	}
+
+}
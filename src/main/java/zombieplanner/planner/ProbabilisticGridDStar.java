@@ -1,12 +1,10 @@
 package zombieplanner.planner;
 
-import robotutils.data.CoordUtils;
 import robotutils.data.GridMap;
 import robotutils.data.IntCoord;
 import robotutils.planning.GridDStar;
 import zombieplanner.simulator.ProbabilityMap;
 import zombieplanner.simulator.ZombieMap;
-import zombieplanner.simulator.ZombieMap.CellType;
 
 /**
  * An implementation of D*-lite that takes a probability distribution of some
@@ -18,23 +16,21 @@ import zombieplanner.simulator.ZombieMap.CellType;
 public class ProbabilisticGridDStar extends GridDStar {
 
 	// cost = (movement cost) + -alpha * log(1 - P(bad stuff in destination))
-	private GridMap map;
-	private ProbabilityMap probDist;
-	private double alpha = 5.0;
+	private final RiskCostField costs;
 
 	public ProbabilisticGridDStar(
 			GridMap map, ProbabilityMap probDist, IntCoord start, IntCoord goal) {
-		super(map, start, goal);
-		this.map = map;
-		this.probDist = probDist;
+		this(map, probDist, 5.0, start, goal);
 	}
 
 	public ProbabilisticGridDStar(
 			GridMap map, ProbabilityMap probDist, double alpha, IntCoord start, IntCoord goal) {
-		super(map, start, goal);
-		this.map = map;
-		this.probDist = probDist;
-		this.alpha = alpha;
+		this(new RiskCostField((ZombieMap)map, probDist, alpha), start, goal);
+	}
+
+	public ProbabilisticGridDStar(RiskCostField costs, IntCoord start, IntCoord goal) {
+		super(costs.getMap(), start, goal);
+		this.costs = costs;
 	}
 
 	/**
@@ -43,16 +39,20 @@ public class ProbabilisticGridDStar extends GridDStar {
 	 */
 	public static final double CONSTANT = 1.0;
 
+	public RiskCostField getCosts() {
+		return costs;
+	}
+
 	@Override
 	protected double c(IntCoord a, IntCoord b) {
-        if (CoordUtils.mdist(a, b) != 1)
-            return Double.POSITIVE_INFINITY;
-		CellType ca = ((ZombieMap)map).typeOf(a.getInts());
-		CellType cb = ((ZombieMap)map).typeOf(b.getInts());
-		if (ca == CellType.OBSTACLE || cb == CellType.OBSTACLE)
+		int ax = (int)a.get(0), ay = (int)a.get(1);
+		int bx = (int)b.get(0), by = (int)b.get(1);
+		if (Math.abs(ax - bx) + Math.abs(ay - by) != 1)
+			return Double.POSITIVE_INFINITY;
+		if (costs.cost(ax, ay) == Double.POSITIVE_INFINITY)
 			return Double.POSITIVE_INFINITY;
 		else
-			return CONSTANT - alpha*Math.log(1.0 - probDist.get(b.getInts()));
+			return costs.cost(bx, by);
 	}
 
 }
@@ -1,13 +1,14 @@
 package zombieplanner.planner;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
 import robotutils.data.CoordUtils;
 import robotutils.data.IntCoord;
-import robotutils.planning.GridDStar;
 import zombieplanner.simulator.Action;
 import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.World;
 import zombieplanner.simulator.Zombie;
 import zombieplanner.simulator.ZombieMap;
 import zombieplanner.simulator.ZombieSimulator;
@@ -17,37 +18,97 @@ import zombieplanner.simulator.ZombieSimulator.StunAction;
 
 public class RiskAverseZombiePlanner implements ZombiePlanner {
 
+	protected World world;
 	protected ZombieMap map;
 	protected ProbabilityMap probDist;
 	protected IntCoord goal;
 
+	/**
+	 * Probability of running into a currently visible zombie in each cell.
+	 * Only the cells listed in dynCells are ever nonzero.
+	 */
 	protected ProbabilityMap dynProbDist;
+	private int[] dynCells, newDynCells, dynMarks;
+	private int dynCount = 0, dynMark = 0;
 
-	protected GridDStar planner;
+	/**
+	 * Manhattan radius around each visible zombie that gets extra risk, and
+	 * the probability of meeting the zombie in its own cell (falling off
+	 * linearly to zero just outside the radius).
+	 */
+	public static final int ZOMBIE_RISK_RADIUS = 3;
+	public static final double ZOMBIE_RISK = 0.5;
+
+	/**
+	 * Most cells the search repairs per step; the rest of a big repair is
+	 * carried over to the following steps, so no one step takes long.
+	 */
+	public static final int REPAIR_EXPANSIONS = 500;
+
+	protected GridDStarLite planner;
 
 	@Override
-	public void initialize(ZombieMap map, ProbabilityMap probMap) {
-		this.map = map;
-		this.probDist = probMap;
+	public void initialize(World world) {
+		this.world = world;
+		this.map = world.getMap();
+		this.probDist = world.getProbDist();
 		this.plan = null;
 		this.planner = null;
+		this.dynProbDist = new ProbabilityMap(map.sizes());
+		this.dynCells = new int[64];
+		this.newDynCells = new int[64];
+		this.dynMarks = new int[dynProbDist.length()];
+		this.dynCount = 0;
 	}
 
 	private List<IntCoord> plan;
+
+	/**
+	 * Get the remaining planned path after the most recent action, not
+	 * including the position the action was planned from, or null if no
+	 * path is known. The path is only materialized when this is called.
+	 */
 	public List<IntCoord> getPlan() {
+		if (plan == null && planner != null) {
+			// as far as the repair has got; finishing it is up to nextStep
+			List<IntCoord> path = planner.plan(0);
+			if (path.size() > 1)
+				plan = path.subList(1, path.size());
+		}
 		return plan;
 	}
 
-	protected GridDStar getPlanner(IntCoord start) {
-		return new ProbabilisticGridDStar(map, probDist, 10000, start, goal);
+	protected GridDStarLite getPlanner(IntCoord start) {
+		return getPlanner(start, 10000);
+	}
+
+	/**
+	 * Get a planner seeded from the shared distance field for the current
+	 * maps, alpha and goal, so trials heading to the same goal don't repeat
+	 * the initial search.
+	 */
+	protected GridDStarLite getPlanner(IntCoord start, double alpha) {
+		RiskCostField costs = RiskCostField.of(world, alpha);
+		return new GridDStarLite(RiskDistanceField.of(world, costs, goal), start);
 	}
 
 	@Override
 	public Action getAction(IntCoord from, Set<Zombie> visibleZombies) {
-		if (planner == null) {
-			planner = getPlanner(from);
-		}
+		Action stun = getStunAction(from, visibleZombies);
+		if (stun != null)
+			return stun;
+
+		IntCoord next = nextStep(from, visibleZombies);
+		if (next == null)
+			return null;
+		return moveToward(from, next);
+	}
 
+	/**
+	 * Get an action stunning the nearest visible zombie if it is within
+	 * stunning distance, or null. Doesn't touch any planner state.
+	 */
+	protected Action getStunAction(IntCoord from, Set<Zombie> visibleZombies) {
 		// if there are zombies in sight
 		if (!visibleZombies.isEmpty()) {
 			double min = Double.POSITIVE_INFINITY;
@@ -64,15 +125,104 @@ public class RiskAverseZombiePlanner implements ZombiePlanner {
 				return new StunAction(target);
 			}
 		}
+		return null;
+	}
+
+	/**
+	 * Recompute {@link #dynProbDist} around the visible zombies, and feed the
+	 * cells whose risk changed since the last call to the planner as extra
+	 * costs, so it only has to repair the search around them. Zombie risk is
+	 * combined with the static risk as an independent event, so it costs
+	 * -alpha * log(1 - P(zombie)) on top of the static cost.
+	 */
+	protected void updateDynamicRisk(Set<Zombie> visibleZombies) {
+		double[] dyn = dynProbDist.getData();
+		int width = map.size(0), height = map.size(1);
+		double alpha = getAlpha();
+
+		for (int k=0; k<dynCount; k++)
+			dyn[dynCells[k]] = 0;
+
+		dynMark++;
+		int count = 0;
+		for (Zombie zombie : visibleZombies) {
+			int zx = (int)zombie.getPosition().get(0);
+			int zy = (int)zombie.getPosition().get(1);
+			for (int dy = -ZOMBIE_RISK_RADIUS; dy <= ZOMBIE_RISK_RADIUS; dy++) {
+				int y = zy + dy;
+				if (y < 0 || y >= height)
+					continue;
+				int r = ZOMBIE_RISK_RADIUS - Math.abs(dy);
+				for (int dx = -r; dx <= r; dx++) {
+					int x = zx + dx;
+					if (x < 0 || x >= width)
+						continue;
+					int i = x + y*width;
+					if (dynMarks[i] != dynMark) {
+						dynMarks[i] = dynMark;
+						if (count == newDynCells.length)
+							newDynCells = Arrays.copyOf(newDynCells, 2*count);
+						newDynCells[count++] = i;
+					}
+					int d = Math.abs(dx) + Math.abs(dy);
+					double p = ZOMBIE_RISK * (1.0 - (double)d/(ZOMBIE_RISK_RADIUS + 1));
+					dyn[i] = 1.0 - (1.0 - dyn[i])*(1.0 - p);
+				}
+			}
+		}
+
+		// cells that lost risk, then cells that gained or changed risk
+		for (int k=0; k<dynCount; k++)
+			if (dynMarks[dynCells[k]] != dynMark)
+				setExtraCost(dynCells[k], 0);
+		for (int k=0; k<count; k++) {
+			int i = newDynCells[k];
+			setExtraCost(i, -alpha*Math.log(1.0 - dyn[i]));
+		}
+
+		int[] tmp = dynCells;
+		dynCells = newDynCells;
+		newDynCells = tmp;
+		dynCount = count;
+	}
+
+	/**
+	 * Get the risk weight of the costs the search runs on.
+	 */
+	protected double getAlpha() {
+		return planner.getCosts().getAlpha();
+	}
+
+	/**
+	 * Give the search an extra cost for entering a cell, from
+	 * {@link #updateDynamicRisk(Set)}.
+	 */
+	protected void setExtraCost(int i, double cost) {
+		planner.setExtraCost(i, cost);
+	}
+
+	/**
+	 * Get the next cell to move to from the given position, or null if there
+	 * is nowhere to go.
+	 */
+	protected IntCoord nextStep(IntCoord from, Set<Zombie> visibleZombies) {
+		if (planner == null) {
+			planner = getPlanner(from);
+		}
+		updateDynamicRisk(visibleZombies);
 
+		plan = null;
 		planner.updateStart(from);
-		plan = planner.plan();
-		if (plan.isEmpty())
-			return null;
-		plan = plan.subList(1, plan.size());
-		if (plan.isEmpty())
+		int next = planner.nextStep(REPAIR_EXPANSIONS);
+		if (next < 0)
 			return null;
-		IntCoord next = plan.get(0);
+		return new IntCoord(next % map.size(0), next / map.size(0));
+	}
+
+	/**
+	 * Get the move action that takes a human from one cell to an adjacent one.
+	 */
+	protected static Action moveToward(IntCoord from, IntCoord next) {
 		if (next.get(0) < from.get(0)) return MoveAction.LEFT;
 		if (next.get(0) > from.get(0)) return MoveAction.RIGHT;
 		if (next.get(1) < from.get(1)) return MoveAction.UP;
@@ -0,0 +1,200 @@
+package zombieplanner.planner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.World;
+import zombieplanner.simulator.ZombieMap;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+
+/**
+ * A flat, precomputed table of the cost of entering each cell of a
+ * {@link ZombieMap}, according to the risk model of
+ * {@link ProbabilisticGridDStar}:
+ *
+ * <pre>cost = CONSTANT - alpha * log(1 - P(bad stuff in cell))</pre>
+ *
+ * Obstacles (and anything outside the map) cost positive infinity. Cells are
+ * addressed by their linear index {@code x + y*width}, the same layout used by
+ * the backing arrays of the maps themselves.
+ *
+ * The table is built once; if cells of the underlying maps change afterwards,
+ * call {@link #update(int, int)} for each changed cell (or {@link #updateAll()})
+ * to bring it back in sync. Use {@link #of(World, double)} to share one field
+ * between all planners working in the same world.
+ *
+ * @author Tim Vergenz
+ */
+public class RiskCostField {
+
+	private final ZombieMap map;
+	private final ProbabilityMap probDist;
+	private final double alpha;
+
+	private final int width, height;
+	private final double[] costs;
+
+	private int version = 0;
+
+	/**
+	 * Notified whenever costs in the field change, for derived structures
+	 * that can repair themselves locally.
+	 */
+	public interface Listener {
+		public void cellChanged(RiskCostField field, int i);
+		public void allChanged(RiskCostField field);
+	}
+
+	private final List<Listener> listeners = Lists.newCopyOnWriteArrayList();
+
+	/**
+	 * Get the cost field of a world's map and distribution with the given
+	 * alpha, shared by everything using the world.
+	 */
+	public static RiskCostField of(final World world, final double alpha) {
+		return world.getLayer(Arrays.<Object>asList(RiskCostField.class, alpha),
+				new Supplier<RiskCostField>() {
+					@Override
+					public RiskCostField get() {
+						return new RiskCostField(world.getMap(), world.getProbDist(), alpha);
+					}
+				});
+	}
+
+	public RiskCostField(ZombieMap map, ProbabilityMap probDist, double alpha) {
+		if (map.dims() != 2)
+			throw new IllegalArgumentException("Cannot build cost field for " + map.dims() + "-D map.");
+		if (probDist.dims() != 2 || probDist.size(0) != map.size(0) || probDist.size(1) != map.size(1))
+			throw new IllegalArgumentException("Zombie distribution doesn't match the map's size.");
+		this.map = map;
+		this.probDist = probDist;
+		this.alpha = alpha;
+		this.width = map.size(0);
+		this.height = map.size(1);
+		this.costs = new double[width * height];
+		updateAll();
+	}
+
+	/**
+	 * Recompute the cost of every cell from the underlying maps.
+	 */
+	public void updateAll() {
+		for (int i = 0; i < costs.length; i++)
+			costs[i] = computeCost(i);
+		version++;
+		for (Listener l : listeners)
+			l.allChanged(this);
+	}
+
+	/**
+	 * Recompute the cost of a single cell after the map or probability
+	 * distribution changed there.
+	 * @return true if the cost of the cell actually changed
+	 */
+	public boolean update(int x, int y) {
+		if (!contains(x, y))
+			return false;
+		int i = x + y*width;
+		double cost = computeCost(i);
+		if (cost == costs[i])
+			return false;
+		costs[i] = cost;
+		version++;
+		for (Listener l : listeners)
+			l.cellChanged(this, i);
+		return true;
+	}
+
+	private double computeCost(int i) {
+		if (map.typeOfLinear(i) == CellType.OBSTACLE)
+			return Double.POSITIVE_INFINITY;
+		if (alpha == 0)
+			return ProbabilisticGridDStar.CONSTANT;
+		return ProbabilisticGridDStar.CONSTANT - alpha*Math.log(1.0 - probDist.getLinear(i));
+	}
+
+	/**
+	 * Get the cost of entering the cell with the given linear index.
+	 */
+	public double cost(int i) {
+		return costs[i];
+	}
+
+	/**
+	 * Get the cost of entering the given cell, or positive infinity if it is
+	 * outside the map.
+	 */
+	public double cost(int x, int y) {
+		return contains(x, y) ? costs[x + y*width] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Get the cost of moving between two adjacent cells, given by linear
+	 * index. Moves out of or into obstacles are infinitely expensive.
+	 */
+	public double edgeCost(int from, int to) {
+		if (costs[from] == Double.POSITIVE_INFINITY)
+			return Double.POSITIVE_INFINITY;
+		return costs[to];
+	}
+
+	public boolean contains(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height;
+	}
+
+	public int index(int x, int y) {
+		return x + y*width;
+	}
+
+	public int x(int i) {
+		return i % width;
+	}
+
+	public int y(int i) {
+		return i / width;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int length() {
+		return costs.length;
+	}
+
+	public double getAlpha() {
+		return alpha;
+	}
+
+	public void addListener(Listener l) {
+		listeners.add(l);
+	}
+
+	public void removeListener(Listener l) {
+		listeners.remove(l);
+	}
+
+	/**
+	 * Get a counter that changes whenever any cost in this field changes.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	public ZombieMap getMap() {
+		return map;
+	}
+
+	public ProbabilityMap getProbDist() {
+		return probDist;
+	}
+
+}
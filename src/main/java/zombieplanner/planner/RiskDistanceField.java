@@ -0,0 +1,132 @@
+package zombieplanner.planner;
+
+import java.util.Arrays;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.World;
+
+import com.google.common.base.Supplier;
+
+/**
+ * The exact risk-weighted cost from every cell of a {@link RiskCostField} to
+ * a single goal cell, computed once by a reverse Dijkstra search from the
+ * goal.
+ *
+ * Since it doesn't depend on the start, one field can be shared by every
+ * planner heading to the same goal; following {@link #nextStep(int)} from any
+ * cell walks an optimal path in constant time per step. Use
+ * {@link #of(World, RiskCostField, IntCoord)} to get a shared instance.
+ *
+ * @author Tim Vergenz
+ */
+public class RiskDistanceField {
+
+	private final RiskCostField costs;
+	private final int goal;
+	private final double[] dist;
+	private final int costsVersion;
+
+	/**
+	 * Get a distance field to the given goal shared by everything using the
+	 * world, computing it only if there is none for the cost field as it is
+	 * now.
+	 */
+	public static RiskDistanceField of(World world, final RiskCostField costs, IntCoord goal) {
+		final int g = costs.index((int)goal.get(0), (int)goal.get(1));
+		return world.getLayer(Arrays.<Object>asList(RiskDistanceField.class, costs, costs.getVersion(), g),
+				new Supplier<RiskDistanceField>() {
+					@Override
+					public RiskDistanceField get() {
+						return new RiskDistanceField(costs, g);
+					}
+				});
+	}
+
+	public RiskDistanceField(RiskCostField costs, int goal) {
+		this.costs = costs;
+		this.goal = goal;
+		this.costsVersion = costs.getVersion();
+		this.dist = new double[costs.length()];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		search();
+	}
+
+	private void search() {
+		int width = costs.getWidth(), height = costs.getHeight();
+		IndexedKeyHeap open = new IndexedKeyHeap(dist.length);
+		dist[goal] = 0;
+		open.put(goal, 0, 0);
+		while (!open.isEmpty()) {
+			int u = open.poll();
+			int x = u % width, y = u / width;
+			if (x > 0) relax(open, u - 1, u);
+			if (x < width - 1) relax(open, u + 1, u);
+			if (y > 0) relax(open, u - width, u);
+			if (y < height - 1) relax(open, u + width, u);
+		}
+	}
+
+	private void relax(IndexedKeyHeap open, int s, int u) {
+		double d = costs.edgeCost(s, u) + dist[u];
+		if (d < dist[s]) {
+			dist[s] = d;
+			open.put(s, d, 0);
+		}
+	}
+
+	/**
+	 * Get the cost from the given cell to the goal (positive infinity if the
+	 * goal can't be reached from it).
+	 */
+	public double get(int i) {
+		return dist[i];
+	}
+
+	/**
+	 * Get the neighbor to move to from cell i along an optimal path, or -1 if
+	 * i is the goal or can't reach it.
+	 */
+	public int nextStep(int i) {
+		if (i == goal || dist[i] == Double.POSITIVE_INFINITY)
+			return -1;
+		int width = costs.getWidth(), x = i % width, y = i / width;
+		int best = -1;
+		double min = Double.POSITIVE_INFINITY;
+		if (x > 0 && costs.edgeCost(i, i - 1) + dist[i - 1] < min) {
+			min = costs.edgeCost(i, i - 1) + dist[i - 1]; best = i - 1;
+		}
+		if (x < width - 1 && costs.edgeCost(i, i + 1) + dist[i + 1] < min) {
+			min = costs.edgeCost(i, i + 1) + dist[i + 1]; best = i + 1;
+		}
+		if (y > 0 && costs.edgeCost(i, i - width) + dist[i - width] < min) {
+			min = costs.edgeCost(i, i - width) + dist[i - width]; best = i - width;
+		}
+		if (y < costs.getHeight() - 1 && costs.edgeCost(i, i + width) + dist[i + width] < min) {
+			min = costs.edgeCost(i, i + width) + dist[i + width]; best = i + width;
+		}
+		return best;
+	}
+
+	/**
+	 * Get a copy of the distances, indexed by linear cell index.
+	 */
+	public double[] copyDistances() {
+		return Arrays.copyOf(dist, dist.length);
+	}
+
+	/**
+	 * Whether the costs have changed since this field was computed.
+	 */
+	public boolean isStale() {
+		return costsVersion != costs.getVersion();
+	}
+
+	public int getGoal() {
+		return goal;
+	}
+
+	public RiskCostField getCosts() {
+		return costs;
+	}
+
+}
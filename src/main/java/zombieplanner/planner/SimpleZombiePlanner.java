@@ -1,24 +1,13 @@
 package zombieplanner.planner;
 
 import robotutils.data.IntCoord;
-import robotutils.planning.GridDStar;
 
 public class SimpleZombiePlanner extends RiskAverseZombiePlanner {
 
 	@Override
-	protected GridDStar getPlanner(IntCoord start) {
-		return new ProbabilisticGridDStar(map, probDist, start, goal) {
-			@Override
-			protected double c(IntCoord a, IntCoord b) {
-				double s = super.c(a, b);
-				if (s < Double.POSITIVE_INFINITY) {
-					return 1.0;
-				}
-				else {
-					return s;
-				}
-			}
-		};
+	protected GridDStarLite getPlanner(IntCoord start) {
+		// with alpha = 0 every non-obstacle cell costs exactly 1.0
+		return getPlanner(start, 0.0);
 	}
 
 }
@@ -4,13 +4,16 @@ import java.util.Set;
 
 import robotutils.data.IntCoord;
 import zombieplanner.simulator.Action;
-import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.World;
 import zombieplanner.simulator.Zombie;
-import zombieplanner.simulator.ZombieMap;
 
 public interface ZombiePlanner {
 
-	public void initialize(ZombieMap map, ProbabilityMap probMap);
+	/**
+	 * Start planning in a world. Layers derived from it, like cost fields,
+	 * should be kept on the world so other planners in it can share them.
+	 */
+	public void initialize(World world);
 
 	public void setGoal(IntCoord goal);
 
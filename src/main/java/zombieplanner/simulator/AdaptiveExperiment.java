@@ -0,0 +1,218 @@
+package zombieplanner.simulator;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import robotutils.data.IntCoord;
+import zombieplanner.planner.ZombiePlanner;
+import zombieplanner.simulator.ExperimentRunner.Batch;
+import zombieplanner.simulator.ExperimentRunner.PairedStats;
+import zombieplanner.simulator.ExperimentRunner.PlannerStats;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An experiment over several start/goal configurations that stops giving a
+ * configuration trials once the comparison between two planners on it is
+ * precise enough, i.e. once the confidence interval on the difference in
+ * their success rates is narrow enough.
+ *
+ * Trials are run in rounds of a fixed total size, shared evenly among the
+ * configurations that are still undecided, so as configurations finish the
+ * rest get their share. Each round's trials for all the configurations are
+ * run together, so the workers stay busy until the whole round is done.
+ * Trials of a configuration are numbered consecutively
+ * from its seed, so its results are the same as those of a fixed-size run of
+ * however many trials it ended up getting.
+ *
+ * If the runner is paired, the two planners are compared trial by trial,
+ * which usually decides configurations in far fewer trials.
+ *
+ * @author Tim Vergenz
+ */
+public class AdaptiveExperiment {
+
+	/**
+	 * A start/goal configuration and the results so far.
+	 */
+	public static class Config {
+		private final IntCoord start, goal;
+		private final long seed;
+		private final Map<String,PlannerStats> stats = Maps.newLinkedHashMap();
+		private final PairedStats paired;
+		private int trials = 0;
+		private boolean decided = false;
+
+		Config(IntCoord start, IntCoord goal, long seed, PairedStats paired) {
+			this.start = start;
+			this.goal = goal;
+			this.seed = seed;
+			this.paired = paired;
+		}
+
+		public IntCoord getStart() {
+			return start;
+		}
+
+		public IntCoord getGoal() {
+			return goal;
+		}
+
+		public long getSeed() {
+			return seed;
+		}
+
+		public int getTrials() {
+			return trials;
+		}
+
+		/**
+		 * Whether the comparison reached the target precision.
+		 */
+		public boolean isDecided() {
+			return decided;
+		}
+
+		public Map<String,PlannerStats> getStats() {
+			return Collections.unmodifiableMap(stats);
+		}
+
+		/**
+		 * Get the trial-by-trial comparison of the two planners.
+		 */
+		public PairedStats getPaired() {
+			return paired;
+		}
+	}
+
+	private final ExperimentRunner runner;
+	private final Map<String,? extends Supplier<? extends ZombiePlanner>> planners;
+	private final String first, second;
+	private final List<Config> configs = Lists.newArrayList();
+
+	private double precision = 0.1;
+	private double z = Interval.Z_95;
+	private int batchSize = 10;
+	private int minTrials = 20;
+	private int maxTrials = 500;
+
+	/**
+	 * @param planners factories for the planners to run, by name
+	 * @param first name of one planner to compare
+	 * @param second name of the planner to compare it to
+	 */
+	public AdaptiveExperiment(ExperimentRunner runner,
+			Map<String,? extends Supplier<? extends ZombiePlanner>> planners,
+			String first, String second) {
+		if (!planners.containsKey(first) || !planners.containsKey(second))
+			throw new IllegalArgumentException("No planner to compare named " + first + " or " + second);
+		this.runner = runner;
+		this.planners = planners;
+		this.first = first;
+		this.second = second;
+	}
+
+	/**
+	 * Set the half-width the interval on the difference in success rates has
+	 * to shrink to (0.1 by default).
+	 */
+	public void setPrecision(double precision) {
+		this.precision = precision;
+	}
+
+	/**
+	 * Set the normal quantile of the confidence level
+	 * ({@link Interval#Z_95} by default).
+	 */
+	public void setZ(double z) {
+		this.z = z;
+	}
+
+	/**
+	 * Set the average number of trials per configuration in each round
+	 * (10 by default).
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Set the bounds on the number of trials any one configuration gets
+	 * (20 and 500 by default).
+	 */
+	public void setTrialLimits(int minTrials, int maxTrials) {
+		this.minTrials = minTrials;
+		this.maxTrials = maxTrials;
+	}
+
+	public Config addConfig(IntCoord start, IntCoord goal, long seed) {
+		Config config = new Config(start, goal, seed, new PairedStats(first, second));
+		for (String name : planners.keySet())
+			config.stats.put(name, new PlannerStats());
+		configs.add(config);
+		return config;
+	}
+
+	public List<Config> getConfigs() {
+		return Collections.unmodifiableList(configs);
+	}
+
+	/**
+	 * Get the interval on the first planner's success rate minus the
+	 * second's for a configuration: paired if the runner is, otherwise
+	 * treating the planners' trials as independent.
+	 */
+	public Interval getDifference(Config config) {
+		if (runner.isPaired())
+			return config.paired.getSuccessDifference(z);
+		return Interval.difference(config.stats.get(first).getSuccessInterval(z),
+				config.stats.get(second).getSuccessInterval(z));
+	}
+
+	/**
+	 * Run rounds of trials until every configuration is decided or has had
+	 * the maximum number of trials, or the budget runs out.
+	 * @param budget the most trials to run in total (each running every
+	 *        planner once)
+	 * @return the number of trials run
+	 */
+	public int run(int numZombies, int budget) {
+		int used = 0;
+		while (used < budget) {
+			List<Config> undecided = Lists.newArrayList();
+			for (Config config : configs)
+				if (!config.decided && config.trials < maxTrials)
+					undecided.add(config);
+			if (undecided.isEmpty())
+				break;
+
+			int round = batchSize * configs.size();
+			int share = (round + undecided.size() - 1) / undecided.size();
+			List<Batch> batches = Lists.newArrayList();
+			int[] counts = new int[undecided.size()];
+			for (int k = 0; k < undecided.size(); k++) {
+				Config config = undecided.get(k);
+				int n = Math.min(Math.min(share, maxTrials - config.trials), budget - used);
+				if (n <= 0)
+					break;
+				batches.add(new Batch(config.start, config.goal, numZombies,
+						config.trials, config.trials + n, config.seed, config.stats, config.paired));
+				counts[k] = n;
+				used += n;
+			}
+			runner.run(batches, planners);
+
+			for (int k = 0; k < batches.size(); k++) {
+				Config config = undecided.get(k);
+				config.trials += counts[k];
+				config.decided = config.trials >= minTrials
+						&& getDifference(config).getHalfWidth() <= precision;
+			}
+		}
+		return used;
+	}
+
+}
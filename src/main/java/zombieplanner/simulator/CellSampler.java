@@ -0,0 +1,184 @@
+package zombieplanner.simulator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws cells at random in proportion to the weights of a
+ * {@link ProbabilityMap}, in constant time per draw, using an alias table
+ * (Vose's method) over the cells with nonzero weight. Cells are returned as
+ * linear indices ({@code x + y*width}).
+ *
+ * A sampler is immutable once built, so one can be shared by any number of
+ * simulations and threads; each {@link World} has one.
+ *
+ * @author Tim Vergenz
+ */
+public class CellSampler {
+
+	private final int[] cells;     // cells with nonzero weight
+	private final double[] weights; // their weights, normalized to sum to 1
+	private final double[] prob;   // alias table
+	private final int[] alias;
+	private final int length;
+
+	public CellSampler(ProbabilityMap probDist) {
+		double[] data = probDist.getData();
+		this.length = data.length;
+
+		int n = 0;
+		double sum = 0;
+		for (int i = 0; i < data.length; i++) {
+			if (data[i] < 0 || Double.isNaN(data[i]))
+				throw new IllegalArgumentException("Negative or NaN weight at cell " + i + ".");
+			if (data[i] > 0) {
+				n++;
+				sum += data[i];
+			}
+		}
+		if (n == 0)
+			throw new IllegalArgumentException("No cell has a positive weight.");
+
+		this.cells = new int[n];
+		this.weights = new double[n];
+		for (int i = 0, k = 0; i < data.length; i++)
+			if (data[i] > 0) {
+				cells[k] = i;
+				weights[k++] = data[i] / sum;
+			}
+
+		// Vose's alias method
+		this.prob = new double[n];
+		this.alias = new int[n];
+		double[] scaled = new double[n];
+		int[] small = new int[n], large = new int[n];
+		int ns = 0, nl = 0;
+		for (int k = 0; k < n; k++) {
+			scaled[k] = weights[k] * n;
+			if (scaled[k] < 1.0)
+				small[ns++] = k;
+			else
+				large[nl++] = k;
+		}
+		while (ns > 0 && nl > 0) {
+			int s = small[--ns], l = large[--nl];
+			prob[s] = scaled[s];
+			alias[s] = l;
+			scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+			if (scaled[l] < 1.0)
+				small[ns++] = l;
+			else
+				large[nl++] = l;
+		}
+		// whatever is left is 1 up to rounding error
+		while (nl > 0)
+			prob[large[--nl]] = 1.0;
+		while (ns > 0)
+			prob[small[--ns]] = 1.0;
+	}
+
+	/**
+	 * Draw one cell.
+	 */
+	public int sample(Random rand) {
+		int k = rand.nextInt(cells.length);
+		return cells[(rand.nextDouble() < prob[k]) ? k : alias[k]];
+	}
+
+	/**
+	 * Draw count distinct cells, as if drawing one cell at a time and taking
+	 * it out of the distribution before the next draw.
+	 * @return the cells, in the order drawn
+	 * @throws IllegalArgumentException if fewer than count cells have
+	 *         nonzero weight
+	 */
+	public int[] sampleDistinct(Random rand, int count) {
+		if (count > cells.length)
+			throw new IllegalArgumentException("Cannot draw " + count + " distinct cells from "
+					+ cells.length + ".");
+		int[] out = new int[count];
+		boolean[] taken = new boolean[length];
+
+		// rejection is fast while the cells already taken hold little weight
+		double takenWeight = 0;
+		int drawn = 0;
+		while (drawn < count && takenWeight < 0.5) {
+			int k = rand.nextInt(cells.length);
+			if (rand.nextDouble() >= prob[k])
+				k = alias[k];
+			if (taken[cells[k]])
+				continue;
+			taken[cells[k]] = true;
+			takenWeight += weights[k];
+			out[drawn++] = cells[k];
+		}
+		if (drawn < count)
+			drawRest(rand, out, drawn, taken);
+		return out;
+	}
+
+	/**
+	 * Fill the rest of out with distinct cells not yet taken, by weighted
+	 * reservoir sampling (Efraimidis-Spirakis): each cell gets key
+	 * log(u)/weight and the cells with the largest keys are drawn, in order of
+	 * decreasing key.
+	 */
+	private void drawRest(Random rand, int[] out, int from, boolean[] taken) {
+		int m = out.length - from;
+		// min-heap on key of the best m cells so far
+		double[] keys = new double[m];
+		int[] heap = new int[m];
+		int size = 0;
+		for (int k = 0; k < cells.length; k++) {
+			if (taken[cells[k]])
+				continue;
+			double key = Math.log(1.0 - rand.nextDouble()) / weights[k];
+			if (size < m) {
+				int p = size++;
+				while (p > 0 && keys[(p - 1) / 2] > key) {
+					keys[p] = keys[(p - 1) / 2];
+					heap[p] = heap[(p - 1) / 2];
+					p = (p - 1) / 2;
+				}
+				keys[p] = key;
+				heap[p] = cells[k];
+			}
+			else if (key > keys[0]) {
+				siftDown(keys, heap, size, key, cells[k]);
+			}
+		}
+		// pop smallest keys first, filling from the back
+		for (int j = out.length - 1; size > 0; j--) {
+			out[j] = heap[0];
+			size--;
+			if (size > 0)
+				siftDown(keys, heap, size, keys[size], heap[size]);
+		}
+	}
+
+	private static void siftDown(double[] keys, int[] heap, int size, double key, int cell) {
+		int p = 0;
+		while (true) {
+			int c = 2*p + 1;
+			if (c >= size)
+				break;
+			if (c + 1 < size && keys[c + 1] < keys[c])
+				c++;
+			if (keys[c] >= key)
+				break;
+			keys[p] = keys[c];
+			heap[p] = heap[c];
+			p = c;
+		}
+		keys[p] = key;
+		heap[p] = cell;
+	}
+
+	/**
+	 * Get the number of cells that can be drawn.
+	 */
+	public int size() {
+		return cells.length;
+	}
+
+}
@@ -0,0 +1,183 @@
+package zombieplanner.simulator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+/**
+ * Generates random start/goal configurations for experiments, without anyone
+ * having to look at them: the start and goal are always cells the human can
+ * stand on, in bounds, connected to each other, and within a given range of
+ * Manhattan distances.
+ *
+ * The connected components of the cells the human can walk on (anything but
+ * obstacles, 4-connected) are found once, up front. Each configuration is
+ * then a uniformly random walkable cell (in a component with room for a goal)
+ * and a uniformly random other cell of the same component, redrawn until the
+ * distance is in range; that takes a constant number of tries on average
+ * unless the range excludes most pairs.
+ *
+ * @author Tim Vergenz
+ */
+public class ConfigGenerator {
+
+	/**
+	 * Draws to try per configuration before deciding the distance range can't
+	 * (practically) be met.
+	 */
+	public static final int MAX_TRIES = 100000;
+
+	private final int width, height;
+
+	// component of each cell, or -1 for obstacles
+	private final int[] component;
+
+	// cells of each component, contiguous: those of component c are
+	// cells[start[c]] to cells[start[c+1]-1]
+	private final int[] cells;
+	private final int[] start;
+
+	// cells in components of at least two cells, i.e. with a goal to go to
+	private final int[] candidates;
+
+	private int minDistance = 1;
+	private int maxDistance = Integer.MAX_VALUE;
+
+	public ConfigGenerator(ZombieMap map) {
+		this.width = map.size(0);
+		this.height = map.size(1);
+		int n = width * height;
+
+		component = new int[n];
+		Arrays.fill(component, -2);
+		int[] queue = new int[n];
+		int[] sizes = new int[16];
+		int components = 0;
+		for (int i = 0; i < n; i++) {
+			if (component[i] != -2)
+				continue;
+			if (map.typeOfLinear(i) == CellType.OBSTACLE) {
+				component[i] = -1;
+				continue;
+			}
+			// flood fill a new component
+			int c = components++;
+			if (c == sizes.length)
+				sizes = Arrays.copyOf(sizes, 2 * c);
+			int head = 0, tail = 0;
+			component[i] = c;
+			queue[tail++] = i;
+			while (head < tail) {
+				int j = queue[head++];
+				int neighbors = map.neighborsOf(j);
+				if ((neighbors & ZombieMap.NEIGHBOR_LEFT) != 0) tail = visit(j - 1, c, queue, tail);
+				if ((neighbors & ZombieMap.NEIGHBOR_RIGHT) != 0) tail = visit(j + 1, c, queue, tail);
+				if ((neighbors & ZombieMap.NEIGHBOR_UP) != 0) tail = visit(j - width, c, queue, tail);
+				if ((neighbors & ZombieMap.NEIGHBOR_DOWN) != 0) tail = visit(j + width, c, queue, tail);
+			}
+			sizes[c] = tail;
+		}
+
+		// bucket the cells by component
+		start = new int[components + 1];
+		for (int c = 0; c < components; c++)
+			start[c+1] = start[c] + sizes[c];
+		cells = new int[start[components]];
+		int[] fill = Arrays.copyOf(start, components);
+		int numCandidates = 0;
+		for (int i = 0; i < n; i++) {
+			if (component[i] >= 0) {
+				cells[fill[component[i]]++] = i;
+				if (sizes[component[i]] > 1)
+					numCandidates++;
+			}
+		}
+		candidates = new int[numCandidates];
+		int k = 0;
+		for (int i = 0; i < n; i++)
+			if (component[i] >= 0 && sizes[component[i]] > 1)
+				candidates[k++] = i;
+	}
+
+	// j is a neighbor that isn't an obstacle
+	private int visit(int j, int c, int[] queue, int tail) {
+		if (component[j] != -2)
+			return tail;
+		component[j] = c;
+		queue[tail] = j;
+		return tail + 1;
+	}
+
+	/**
+	 * Only generate starts and goals at least min and at most max apart
+	 * (Manhattan distance; 1 and unbounded by default).
+	 */
+	public void setDistanceRange(int min, int max) {
+		if (min < 1 || max < min)
+			throw new IllegalArgumentException("Bad distance range " + min + " to " + max);
+		this.minDistance = min;
+		this.maxDistance = max;
+	}
+
+	/**
+	 * Get the component of a cell, or -1 if it's an obstacle or out of bounds.
+	 */
+	public int componentOf(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height)
+			return -1;
+		return component[x + y * width];
+	}
+
+	public int getComponentCount() {
+		return start.length - 1;
+	}
+
+	public int getComponentSize(int c) {
+		return start[c+1] - start[c];
+	}
+
+	/**
+	 * Whether the human can get from one cell to the other (ignoring zombies).
+	 */
+	public boolean isReachable(IntCoord a, IntCoord b) {
+		int c = componentOf((int)a.get(0), (int)a.get(1));
+		return c >= 0 && c == componentOf((int)b.get(0), (int)b.get(1));
+	}
+
+	/**
+	 * Get a uniformly random cell the human can stand on.
+	 */
+	public IntCoord randomLocation(Random rand) {
+		if (cells.length == 0)
+			throw new IllegalStateException("No walkable cells");
+		return coord(cells[rand.nextInt(cells.length)]);
+	}
+
+	/**
+	 * Get a random start/goal configuration.
+	 * @return the start and the goal
+	 * @throws IllegalStateException if no configuration in the distance range
+	 *         turned up
+	 */
+	public IntCoord[] next(Random rand) {
+		if (candidates.length > 0) {
+			for (int tries = 0; tries < MAX_TRIES; tries++) {
+				int s = candidates[rand.nextInt(candidates.length)];
+				int c = component[s];
+				int g = cells[start[c] + rand.nextInt(start[c+1] - start[c])];
+				int d = Math.abs(s % width - g % width) + Math.abs(s / width - g / width);
+				if (minDistance <= d && d <= maxDistance)
+					return new IntCoord[] { coord(s), coord(g) };
+			}
+		}
+		throw new IllegalStateException("No start and goal between "
+				+ minDistance + " and " + maxDistance + " apart found");
+	}
+
+	private IntCoord coord(int i) {
+		return new IntCoord(i % width, i / width);
+	}
+
+}
@@ -0,0 +1,438 @@
+package zombieplanner.simulator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import robotutils.data.IntCoord;
+import zombieplanner.planner.ZombiePlanner;
+import zombieplanner.simulator.ZombieSimulator.GameState;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+
+/**
+ * Runs batches of independent simulation trials in parallel on a
+ * work-stealing pool.
+ *
+ * Every trial shares one {@link World}, built once up front. Each
+ * worker thread gets its own planner instances (reused across the trials it
+ * runs, in this and later batches, as the sequential experiment did) and each
+ * trial its own simulator.
+ * Results are gathered in lock-free counters, and optionally written out to
+ * a {@link ResultsSink} as each trial finishes.
+ *
+ * @author Tim Vergenz
+ */
+public class ExperimentRunner {
+
+	private final World world;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Aggregate results of one planner over a batch of trials.
+	 */
+	public static class PlannerStats {
+		private final AtomicInteger trials = new AtomicInteger();
+		private final AtomicInteger successes = new AtomicInteger();
+		private final AtomicLong totalSteps = new AtomicLong();
+		private final AtomicLong totalSquaredSteps = new AtomicLong();
+		private final AtomicLong zombiesStunned = new AtomicLong();
+
+		void record(TrialResult result) {
+			trials.incrementAndGet();
+			totalSteps.addAndGet(result.getSteps());
+			totalSquaredSteps.addAndGet((long)result.getSteps() * result.getSteps());
+			if (result.isSuccess()) {
+				successes.incrementAndGet();
+				zombiesStunned.addAndGet(result.getStunned());
+			}
+		}
+
+		public int getTrials() {
+			return trials.get();
+		}
+
+		public int getSuccesses() {
+			return successes.get();
+		}
+
+		public double getSuccessRate() {
+			return (double)successes.get() / trials.get();
+		}
+
+		public double getAverageSteps() {
+			return (double)totalSteps.get() / trials.get();
+		}
+
+		/**
+		 * Get the Wilson interval for the success rate.
+		 * @param z normal quantile for the confidence wanted, e.g.
+		 *        {@link Interval#Z_95}
+		 */
+		public Interval getSuccessInterval(double z) {
+			return Interval.wilson(successes.get(), trials.get(), z);
+		}
+
+		/**
+		 * Get the normal interval for the average number of steps.
+		 */
+		public Interval getStepsInterval(double z) {
+			int n = trials.get();
+			double mean = getAverageSteps();
+			double variance = (n > 1) ? (totalSquaredSteps.get() - n * mean * mean) / (n - 1) : 0;
+			return Interval.mean(mean, Math.max(0, variance), n, z);
+		}
+
+		/**
+		 * Average number of zombies stunned per trial, where only successful
+		 * trials count toward the total.
+		 */
+		public double getAverageStunned() {
+			return (double)zombiesStunned.get() / trials.get();
+		}
+	}
+
+	/**
+	 * Paired comparison of two planners over a batch where every trial ran
+	 * both of them, so differences are measured trial by trial.
+	 */
+	public static class PairedStats {
+		private final String first, second;
+		private final AtomicInteger trials = new AtomicInteger();
+		private final AtomicInteger firstOnly = new AtomicInteger();
+		private final AtomicInteger secondOnly = new AtomicInteger();
+		private final AtomicLong stepsDifference = new AtomicLong();
+		private final AtomicLong squaredStepsDifference = new AtomicLong();
+
+		public PairedStats(String first, String second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		void record(TrialResult a, TrialResult b) {
+			trials.incrementAndGet();
+			if (a.isSuccess() && !b.isSuccess())
+				firstOnly.incrementAndGet();
+			else if (b.isSuccess() && !a.isSuccess())
+				secondOnly.incrementAndGet();
+			long d = a.getSteps() - b.getSteps();
+			stepsDifference.addAndGet(d);
+			squaredStepsDifference.addAndGet(d * d);
+		}
+
+		public String getFirst() {
+			return first;
+		}
+
+		public String getSecond() {
+			return second;
+		}
+
+		public int getTrials() {
+			return trials.get();
+		}
+
+		/**
+		 * Get the number of trials only the first planner succeeded at.
+		 */
+		public int getFirstOnly() {
+			return firstOnly.get();
+		}
+
+		/**
+		 * Get the number of trials only the second planner succeeded at.
+		 */
+		public int getSecondOnly() {
+			return secondOnly.get();
+		}
+
+		/**
+		 * Get the interval on the first planner's success rate minus the
+		 * second's.
+		 */
+		public Interval getSuccessDifference(double z) {
+			return Interval.pairedDifference(firstOnly.get(), secondOnly.get(), trials.get(), z);
+		}
+
+		/**
+		 * Get the interval on the first planner's average steps minus the
+		 * second's.
+		 */
+		public Interval getStepsDifference(double z) {
+			int n = trials.get();
+			double mean = (double)stepsDifference.get() / n;
+			double variance = (n > 1) ? (squaredStepsDifference.get() - n * mean * mean) / (n - 1) : 0;
+			return Interval.mean(mean, Math.max(0, variance), n, z);
+		}
+	}
+
+	/**
+	 * A range of trials from start to goal, and the statistics to add their
+	 * results to.
+	 */
+	public static class Batch {
+		private final IntCoord start, goal;
+		private final int numZombies, from, to;
+		private final long seed;
+		private final Map<String,PlannerStats> stats;
+		private final PairedStats paired;
+
+		/**
+		 * @param from the first trial to run (inclusive)
+		 * @param to the last trial to run (exclusive)
+		 * @param seed seed for the batch; trial n is simulated with seed
+		 *        {@code SplitMixRandom.mix(seed, n)} for every planner
+		 * @param stats statistics to add to, with an entry for every planner
+		 * @param paired the comparison to add to, or null for none
+		 */
+		public Batch(IntCoord start, IntCoord goal, int numZombies, int from, int to,
+				long seed, Map<String,PlannerStats> stats, PairedStats paired) {
+			this.start = start;
+			this.goal = goal;
+			this.numZombies = numZombies;
+			this.from = from;
+			this.to = to;
+			this.seed = seed;
+			this.stats = stats;
+			this.paired = paired;
+		}
+	}
+
+	private boolean commonStreams = false;
+	private ResultsSink sink;
+
+	// planner instances for each worker thread, made from the factories last
+	// run, so they're kept from one batch to the next
+	private Map<String,? extends Supplier<? extends ZombiePlanner>> localFactories;
+	private ThreadLocal<Map<String,ZombiePlanner>> local;
+
+	public ExperimentRunner(World world, int threads) {
+		this.world = world;
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	public ExperimentRunner(World world) {
+		this(world, Runtime.getRuntime().availableProcessors());
+	}
+
+	public ExperimentRunner(ZombieMap map, ProbabilityMap probDist, int threads) {
+		this(new World(map, probDist), threads);
+	}
+
+	public ExperimentRunner(ZombieMap map, ProbabilityMap probDist) {
+		this(new World(map, probDist));
+	}
+
+	public World getWorld() {
+		return world;
+	}
+
+	/**
+	 * Run planners on common random numbers: every planner in a trial faces
+	 * the same zombies, which make the same moves until the humans' paths
+	 * diverge (see {@link ZombieSimulator#setPerZombieStreams(boolean)}).
+	 * Comparisons between planners are then much less noisy, especially
+	 * paired ones. Off by default; in any case every planner in a trial gets
+	 * the same zombies to start with.
+	 */
+	public void setPaired(boolean paired) {
+		this.commonStreams = paired;
+	}
+
+	public boolean isPaired() {
+		return commonStreams;
+	}
+
+	/**
+	 * Write every trial's results to a sink, and take the results of trials
+	 * already in it from there instead of running them again. Trials are
+	 * identified by configuration (number of zombies, start and goal),
+	 * planner name and seed, so rerunning an experiment with the same seed
+	 * picks up where it left off.
+	 */
+	public void setSink(ResultsSink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Get the name results of trials from start to goal are recorded under.
+	 */
+	public static String configName(IntCoord start, IntCoord goal, int numZombies) {
+		return numZombies + " " + (int)start.get(0) + "," + (int)start.get(1)
+				+ " " + (int)goal.get(0) + "," + (int)goal.get(1);
+	}
+
+	/**
+	 * Run a number of trials from start to goal for each planner, with every
+	 * trial running all planners in turn.
+	 * @param seed seed for the batch; trial n is simulated with seed
+	 *        {@code SplitMixRandom.mix(seed, n)} for every planner
+	 * @param planners factories for the planners to compare, by name; each is
+	 *        called once per worker thread
+	 * @return statistics for each planner, in the same order
+	 */
+	public Map<String,PlannerStats> run(IntCoord start, IntCoord goal,
+			int numZombies, int trials, long seed,
+			Map<String,? extends Supplier<? extends ZombiePlanner>> planners) {
+		Map<String,PlannerStats> stats = Maps.newLinkedHashMap();
+		for (String name : planners.keySet())
+			stats.put(name, new PlannerStats());
+		run(start, goal, numZombies, 0, trials, seed, planners, stats);
+		return stats;
+	}
+
+	/**
+	 * Run trials {@code from} (inclusive) to {@code to} (exclusive) of a batch,
+	 * adding the results to existing statistics, so a batch can be extended a
+	 * few trials at a time with the same results as running it all at once.
+	 * @param stats statistics to add to, with an entry for every planner
+	 */
+	public void run(IntCoord start, IntCoord goal,
+			int numZombies, int from, int to, long seed,
+			Map<String,? extends Supplier<? extends ZombiePlanner>> planners,
+			Map<String,PlannerStats> stats) {
+		run(start, goal, numZombies, from, to, seed, planners, stats, null);
+	}
+
+	/**
+	 * Run a range of trials as above, also comparing two of the planners
+	 * trial by trial.
+	 * @param paired the comparison to add to, or null for none
+	 */
+	public void run(IntCoord start, IntCoord goal,
+			int numZombies, int from, int to, long seed,
+			Map<String,? extends Supplier<? extends ZombiePlanner>> planners,
+			Map<String,PlannerStats> stats, PairedStats paired) {
+		run(Collections.singletonList(new Batch(start, goal, numZombies, from, to, seed, stats, paired)),
+				planners);
+	}
+
+	/**
+	 * Run several batches at once, so workers that finish one batch's trials
+	 * can start on the next batch's rather than waiting for the slowest.
+	 * Results are the same as running the batches one after another.
+	 */
+	public void run(List<Batch> batches,
+			Map<String,? extends Supplier<? extends ZombiePlanner>> planners) {
+		final ThreadLocal<Map<String,ZombiePlanner>> local = plannersFor(planners);
+		final RecursiveAction[] tasks = new RecursiveAction[batches.size()];
+		for (int k = 0; k < tasks.length; k++)
+			tasks[k] = new Trials(trialOf(batches.get(k), planners, local),
+					batches.get(k).from, batches.get(k).to);
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	/**
+	 * Get the worker threads' planner instances for a set of factories,
+	 * starting afresh if they aren't the ones last run.
+	 */
+	private synchronized ThreadLocal<Map<String,ZombiePlanner>> plannersFor(
+			final Map<String,? extends Supplier<? extends ZombiePlanner>> planners) {
+		if (planners != localFactories) {
+			localFactories = planners;
+			local = new ThreadLocal<Map<String,ZombiePlanner>>() {
+				@Override
+				protected Map<String,ZombiePlanner> initialValue() {
+					Map<String,ZombiePlanner> instances = Maps.newLinkedHashMap();
+					for (Entry<String,? extends Supplier<? extends ZombiePlanner>> e : planners.entrySet())
+						instances.put(e.getKey(), e.getValue().get());
+					return instances;
+				}
+			};
+		}
+		return local;
+	}
+
+	private Trial trialOf(final Batch batch,
+			final Map<String,? extends Supplier<? extends ZombiePlanner>> planners,
+			final ThreadLocal<Map<String,ZombiePlanner>> local) {
+		final String config = configName(batch.start, batch.goal, batch.numZombies);
+		return new Trial() {
+			@Override
+			public void run(int trial) {
+				long trialSeed = SplitMixRandom.mix(batch.seed, trial);
+				Map<String,TrialResult> results = Maps.newHashMap();
+				for (String name : planners.keySet()) {
+					TrialResult result = (sink != null) ? sink.get(config, name, trialSeed) : null;
+					if (result == null) {
+						long startTime = System.nanoTime();
+						ZombieSimulator sim = new ZombieSimulator(world, local.get().get(name), trialSeed);
+						sim.setPerZombieStreams(commonStreams);
+						sim.setNumZombies(batch.numZombies);
+						sim.setHumanPosition(batch.start);
+						sim.setGoalPosition(batch.goal);
+						sim.initializeZombies();
+						while (sim.getState() == GameState.ACTIVE)
+							sim.stepOnce();
+						result = TrialResult.of(config, name, sim, System.nanoTime() - startTime);
+						if (sink != null) {
+							try {
+								sink.write(result);
+							} catch (IOException e) {
+								throw new IllegalStateException("Couldn't record results", e);
+							}
+						}
+					}
+					batch.stats.get(name).record(result);
+					results.put(name, result);
+				}
+				if (batch.paired != null)
+					batch.paired.record(results.get(batch.paired.getFirst()),
+							results.get(batch.paired.getSecond()));
+			}
+		};
+	}
+
+	private interface Trial {
+		void run(int trial);
+	}
+
+	/**
+	 * A range of trials, split in half until single trials are left so idle
+	 * workers can steal the other halves.
+	 */
+	private static class Trials extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Trial trial;
+		private final int from, to;
+
+		Trials(Trial trial, int from, int to) {
+			this.trial = trial;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				trial.run(from);
+			}
+			else if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Trials(trial, from, mid), new Trials(trial, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * Stop the worker threads once queued work is done.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+}
@@ -0,0 +1,114 @@
+package zombieplanner.simulator;
+
+/**
+ * A confidence interval around an estimate, with factories for the kinds of
+ * estimates experiments report: success rates, mean step counts and the
+ * difference between two planners' success rates, measured on independent or
+ * on the same trials.
+ *
+ * @author Tim Vergenz
+ */
+public class Interval {
+
+	/**
+	 * Standard normal quantile for two-sided 95% intervals.
+	 */
+	public static final double Z_95 = 1.959964;
+
+	private final double estimate, lower, upper;
+
+	public Interval(double estimate, double lower, double upper) {
+		this.estimate = estimate;
+		this.lower = lower;
+		this.upper = upper;
+	}
+
+	/**
+	 * Wilson score interval for a proportion. Unlike the textbook normal
+	 * interval it stays inside [0,1] and behaves sensibly for rates near 0
+	 * or 1 and for few trials; with no trials at all it is [0,1].
+	 */
+	public static Interval wilson(int successes, int trials, double z) {
+		if (trials == 0)
+			return new Interval(Double.NaN, 0, 1);
+		double n = trials;
+		double p = successes / n;
+		double z2 = z * z;
+		double center = (p + z2 / (2*n)) / (1 + z2/n);
+		double half = z / (1 + z2/n) * Math.sqrt(p * (1-p) / n + z2 / (4*n*n));
+		return new Interval(p, Math.max(0, center - half), Math.min(1, center + half));
+	}
+
+	/**
+	 * Normal interval for a mean, given the sample variance.
+	 */
+	public static Interval mean(double mean, double variance, int trials, double z) {
+		if (trials == 0)
+			return new Interval(Double.NaN, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		double half = z * Math.sqrt(variance / trials);
+		return new Interval(mean, mean - half, mean + half);
+	}
+
+	/**
+	 * Newcombe's interval for the difference a - b of two independent
+	 * proportions, built from their Wilson intervals.
+	 */
+	public static Interval difference(Interval a, Interval b) {
+		double d = a.estimate - b.estimate;
+		if (Double.isNaN(d))
+			return new Interval(Double.NaN, -1, 1);
+		double lo = Math.sqrt(sq(a.estimate - a.lower) + sq(b.upper - b.estimate));
+		double hi = Math.sqrt(sq(a.upper - a.estimate) + sq(b.estimate - b.lower));
+		return new Interval(d, d - lo, d + hi);
+	}
+
+	/**
+	 * Agresti and Min's interval for the difference between two success
+	 * rates measured on the same trials, from the numbers of trials where
+	 * only the first succeeded and where only the second did. It adds half a
+	 * trial to each outcome, so it doesn't collapse to a point when no
+	 * trials disagree.
+	 */
+	public static Interval pairedDifference(int firstOnly, int secondOnly, int trials, double z) {
+		if (trials == 0)
+			return new Interval(Double.NaN, -1, 1);
+		double n = trials + 2;
+		double b = firstOnly + 0.5, c = secondOnly + 0.5;
+		double half = z / n * Math.sqrt(b + c - sq(b - c) / n);
+		double d = (double)(firstOnly - secondOnly) / trials;
+		return new Interval(d, Math.max(-1, (b - c) / n - half), Math.min(1, (b - c) / n + half));
+	}
+
+	private static double sq(double x) {
+		return x * x;
+	}
+
+	public double getEstimate() {
+		return estimate;
+	}
+
+	public double getLower() {
+		return lower;
+	}
+
+	public double getUpper() {
+		return upper;
+	}
+
+	/**
+	 * Get half the width of the interval.
+	 */
+	public double getHalfWidth() {
+		return (upper - lower) / 2;
+	}
+
+	public boolean contains(double x) {
+		return lower <= x && x <= upper;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.4f [%.4f, %.4f]", estimate, lower, upper);
+	}
+
+}
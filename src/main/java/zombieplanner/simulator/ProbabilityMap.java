@@ -26,6 +26,7 @@ public class ProbabilityMap {
     int _length = 0;
 
     boolean isNormal;
+    int modCount = 0;
 
     /**
      * Instantiate a ProbabilityMap
@@ -40,9 +41,13 @@ public class ProbabilityMap {
     }
 
     /**
-     * Scale the probabilities so the total distribution sums to 1.
+     * Scale the probabilities so the total distribution sums to 1. Does
+     * nothing if the map is already known to be normal (writes made directly
+     * to {@link #getData()} don't change that).
      */
     public void normalize() {
+    	if (isNormal)
+    		return;
     	double sum = 0.0;
     	for (int i=0; i<_map.length; i++)
     		sum += _map[i];
@@ -51,6 +56,7 @@ public class ProbabilityMap {
 	    		_map[i] = _map[i]/sum;
     	}
     	isNormal = true;
+    	modCount++;
     }
 
     /**
@@ -63,6 +69,17 @@ public class ProbabilityMap {
     	return isNormal;
     }
 
+    /**
+     * Gets a counter that changes whenever values in this map are changed
+     * through the set methods, {@link #normalize()} or
+     * {@link #resize(int...)}, so derived data can tell when it is stale.
+     * Writes made directly to {@link #getData()} are not counted.
+     * @return the modification count
+     */
+    public int getModCount() {
+    	return modCount;
+    }
+
     /**
      * @see StaticMap#resize(int...)
      */
@@ -78,6 +95,7 @@ public class ProbabilityMap {
         _length = _cumSizes[_sizes.length - 1] * _sizes[_sizes.length - 1];
         _map = new double[_length];
         isNormal = false;
+        modCount++;
     }
 
     /**
@@ -109,9 +127,46 @@ public class ProbabilityMap {
      */
     public void set(double val, int... idx) {
         int i = index(idx);
-        if (_map[i] != val)
+        // unchanged values aren't written, so maps shared between threads
+        // can be re-filtered safely once they are filtered
+        if (i >= 0 && _map[i] != val) {
         	isNormal = false;
-        if (i >= 0) _map[i] = val;
+        	modCount++;
+        	_map[i] = val;
+        }
+    }
+
+    /**
+     * Get the value at (x, y) of a 2-D map, or 0 out of bounds, without
+     * allocating an index array.
+     */
+    public double get(int x, int y) {
+        if (x < 0 || x >= _sizes[0] || y < 0 || y >= _sizes[1])
+            return 0;
+        return _map[x + y*_sizes[0]];
+    }
+
+    /**
+     * Get the value at a linear index, x + y*width for a 2-D map.
+     */
+    public double getLinear(int i) {
+        return _map[i];
+    }
+
+    /**
+     * Set the value at (x, y) of a 2-D map, without allocating an index
+     * array.
+     * @see #set(double, int...)
+     */
+    public void set(double val, int x, int y) {
+        if (x < 0 || x >= _sizes[0] || y < 0 || y >= _sizes[1])
+            return;
+        int i = x + y*_sizes[0];
+        if (_map[i] != val) {
+        	isNormal = false;
+        	modCount++;
+        	_map[i] = val;
+        }
     }
 
     /**
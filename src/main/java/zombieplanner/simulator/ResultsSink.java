@@ -0,0 +1,168 @@
+package zombieplanner.simulator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import zombieplanner.simulator.ZombieSimulator.GameState;
+
+import com.google.common.collect.Maps;
+
+/**
+ * An append-only file of trial results, one tab-separated line per trial
+ * (config, planner, seed, outcome, steps, stuns, wall time in ns), written as
+ * trials finish so a sweep that dies part way keeps everything it finished.
+ *
+ * Writes are buffered, and flushed and synced to disk once every
+ * {@link #SYNC_EVERY} records or {@link #SYNC_INTERVAL} nanoseconds, whichever
+ * comes first, so at most that much is lost in a crash. Opening an existing
+ * file reads the results already in it (dropping a line left half-written by
+ * a crash), so an experiment can skip the trials it already ran.
+ *
+ * @author Tim Vergenz
+ */
+public class ResultsSink implements Closeable {
+
+	public static final int SYNC_EVERY = 256;
+	public static final long SYNC_INTERVAL = 5000000000L;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String HEADER = "#config\tplanner\tseed\toutcome\tsteps\tstuns\twall_ns";
+
+	private final File file;
+	private final FileOutputStream out;
+	private final Writer writer;
+	private final Map<String,TrialResult> completed = Maps.newHashMap();
+
+	private int unsynced = 0;
+	private long lastSync = System.nanoTime();
+
+	/**
+	 * Open a results file, creating it if it doesn't exist.
+	 * @throws IOException if it can't be opened, or holds something other
+	 *         than results
+	 */
+	public ResultsSink(File file) throws IOException {
+		this.file = file;
+		boolean exists = file.exists();
+		if (exists)
+			recover();
+		else if (file.getAbsoluteFile().getParentFile() != null)
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		this.out = new FileOutputStream(file, true);
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+		if (!exists || file.length() == 0) {
+			writer.write(HEADER);
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Read the results in the file, cutting off an unfinished last line.
+	 */
+	private void recover() throws IOException {
+		long length = 0;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			StringBuilder line = new StringBuilder();
+			int lineNum = 0;
+			int c;
+			while ((c = reader.read()) != -1) {
+				if (c != '\n') {
+					line.append((char)c);
+					continue;
+				}
+				lineNum++;
+				length += line.toString().getBytes(UTF8).length + 1;
+				if (line.length() > 0 && line.charAt(0) != '#') {
+					TrialResult result = parse(line.toString(), lineNum);
+					completed.put(result.getKey(), result);
+				}
+				line.setLength(0);
+			}
+		} finally {
+			reader.close();
+		}
+
+		if (length < file.length()) {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(length);
+			} finally {
+				raf.close();
+			}
+		}
+	}
+
+	private TrialResult parse(String line, int lineNum) throws IOException {
+		String[] fields = line.split("\t", -1);
+		if (fields.length != 7)
+			throw new IOException(file + ":" + lineNum + ": expected 7 fields, not " + fields.length);
+		try {
+			return new TrialResult(fields[0], fields[1], Long.parseLong(fields[2]),
+					GameState.valueOf(fields[3]), Integer.parseInt(fields[4]),
+					Integer.parseInt(fields[5]), Long.parseLong(fields[6]));
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + ":" + lineNum + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Get the result already recorded for a trial, or null if there isn't
+	 * one.
+	 */
+	public synchronized TrialResult get(String config, String planner, long seed) {
+		return completed.get(TrialResult.key(config, planner, seed));
+	}
+
+	/**
+	 * Get the number of results recorded, including those read at startup.
+	 */
+	public synchronized int size() {
+		return completed.size();
+	}
+
+	/**
+	 * Append a result.
+	 */
+	public synchronized void write(TrialResult result) throws IOException {
+		if (result.getConfig().indexOf('\t') >= 0 || result.getConfig().indexOf('\n') >= 0
+				|| result.getPlanner().indexOf('\t') >= 0 || result.getPlanner().indexOf('\n') >= 0)
+			throw new IllegalArgumentException("Config and planner names can't contain tabs or newlines");
+		writer.write(result.toString());
+		writer.write('\n');
+		completed.put(result.getKey(), result);
+		if (++unsynced >= SYNC_EVERY || System.nanoTime() - lastSync >= SYNC_INTERVAL)
+			sync();
+	}
+
+	/**
+	 * Flush everything written so far and sync it to disk.
+	 */
+	public synchronized void sync() throws IOException {
+		writer.flush();
+		out.getFD().sync();
+		unsynced = 0;
+		lastSync = System.nanoTime();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			sync();
+		} finally {
+			writer.close();
+		}
+	}
+
+}
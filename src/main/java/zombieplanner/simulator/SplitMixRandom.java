@@ -0,0 +1,105 @@
+package zombieplanner.simulator;
+
+import java.util.Random;
+
+/**
+ * A fast, seedable and splittable random number generator (SplitMix64, the
+ * algorithm behind Java 8's {@code SplittableRandom}).
+ *
+ * Unlike {@link Random}, it isn't thread-safe and doesn't synchronize, so
+ * each simulation should own its own instance. {@link #split()} derives an
+ * independent generator, so separate parts of a simulation can each get their
+ * own stream while the whole run stays reproducible from a single seed.
+ *
+ * @author Tim Vergenz
+ */
+public class SplitMixRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+	private long state;
+	private final long gamma;
+
+	public SplitMixRandom(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private SplitMixRandom(long seed, long gamma) {
+		super(0L);
+		this.state = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Create a new generator, independent of this one, and advance this one.
+	 */
+	public SplitMixRandom split() {
+		return new SplitMixRandom(mix64(nextSeed()), mixGamma(nextSeed()));
+	}
+
+	/**
+	 * Mix a seed with an index, e.g. to derive the seed of the n-th trial of an
+	 * experiment from the experiment's seed.
+	 */
+	public static long mix(long seed, long n) {
+		return mix64(seed + (n + 1) * GOLDEN_GAMMA);
+	}
+
+	private long nextSeed() {
+		return (state += gamma);
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		// called by Random's constructor before our fields are set
+		this.state = seed;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return mix32(nextSeed()) >>> (32 - bits);
+	}
+
+	@Override
+	public int nextInt() {
+		return mix32(nextSeed());
+	}
+
+	@Override
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	@Override
+	public double nextDouble() {
+		return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return mix32(nextSeed()) < 0;
+	}
+
+}
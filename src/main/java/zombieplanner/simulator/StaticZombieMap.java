@@ -4,12 +4,33 @@ import robotutils.data.StaticMap;
 
 public class StaticZombieMap extends StaticMap implements ZombieMap {
 
+	private static final byte OBSTACLE = CellType.OBSTACLE.getByteVal();
+
+	// the backing array and first two sizes, for the 2-D accessors; not
+	// initialized here, since the superclass constructor may resize first
+	private byte[] data;
+	private int width, height;
+
 	public StaticZombieMap() {
 		super();
+		cacheLayout();
 	}
 
 	public StaticZombieMap(int... sizes) {
 		super(sizes);
+		cacheLayout();
+	}
+
+	@Override
+	public void resize(int... sizes) {
+		super.resize(sizes);
+		cacheLayout();
+	}
+
+	private void cacheLayout() {
+		data = getData();
+		width = (dims() > 0) ? size(0) : 0;
+		height = (dims() > 1) ? size(1) : (dims() > 0 ? 1 : 0);
 	}
 
 	@Override
@@ -22,4 +43,47 @@ public class StaticZombieMap extends StaticMap implements ZombieMap {
 		return CellType.fromByteVal(get(idx));
 	}
 
+	@Override
+	public byte get(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height)
+			return 0;
+		return data[x + y*width];
+	}
+
+	@Override
+	public byte getLinear(int i) {
+		return data[i];
+	}
+
+	@Override
+	public CellType typeOf(int x, int y) {
+		return CellType.fromByteVal(get(x, y));
+	}
+
+	@Override
+	public CellType typeOfLinear(int i) {
+		return CellType.fromByteVal(data[i]);
+	}
+
+	@Override
+	public void set(CellType type, int x, int y) {
+		if (x >= 0 && x < width && y >= 0 && y < height)
+			data[x + y*width] = type.getByteVal();
+	}
+
+	@Override
+	public int neighborsOf(int i) {
+		int x = i % width;
+		int bits = 0;
+		if (x > 0 && data[i-1] != OBSTACLE)
+			bits |= NEIGHBOR_LEFT;
+		if (x < width - 1 && data[i+1] != OBSTACLE)
+			bits |= NEIGHBOR_RIGHT;
+		if (i >= width && data[i-width] != OBSTACLE)
+			bits |= NEIGHBOR_UP;
+		if (i + width < width * height && data[i+width] != OBSTACLE)
+			bits |= NEIGHBOR_DOWN;
+		return bits;
+	}
+
 }
@@ -0,0 +1,90 @@
+package zombieplanner.simulator;
+
+import zombieplanner.simulator.ZombieSimulator.GameState;
+
+/**
+ * The outcome of one planner on one trial of an experiment: which
+ * configuration and seed it ran, whether it made it, how many steps it took
+ * and zombies it stunned, and how long it took to simulate.
+ *
+ * @author Tim Vergenz
+ */
+public class TrialResult {
+
+	private final String config;
+	private final String planner;
+	private final long seed;
+	private final GameState outcome;
+	private final int steps;
+	private final int stunned;
+	private final long wallNanos;
+
+	public TrialResult(String config, String planner, long seed,
+			GameState outcome, int steps, int stunned, long wallNanos) {
+		this.config = config;
+		this.planner = planner;
+		this.seed = seed;
+		this.outcome = outcome;
+		this.steps = steps;
+		this.stunned = stunned;
+		this.wallNanos = wallNanos;
+	}
+
+	/**
+	 * Get the result of a finished simulation.
+	 */
+	public static TrialResult of(String config, String planner, ZombieSimulator sim, long wallNanos) {
+		return new TrialResult(config, planner, sim.getSeed(),
+				sim.getState(), sim.totalSteps, sim.zombiesStunned, wallNanos);
+	}
+
+	public String getConfig() {
+		return config;
+	}
+
+	public String getPlanner() {
+		return planner;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public GameState getOutcome() {
+		return outcome;
+	}
+
+	public boolean isSuccess() {
+		return outcome == GameState.SUCCESS;
+	}
+
+	public int getSteps() {
+		return steps;
+	}
+
+	public int getStunned() {
+		return stunned;
+	}
+
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	/**
+	 * Get the key identifying the trial this is the result of; an experiment
+	 * runs each key at most once.
+	 */
+	public String getKey() {
+		return key(config, planner, seed);
+	}
+
+	static String key(String config, String planner, long seed) {
+		return config + '\t' + planner + '\t' + seed;
+	}
+
+	@Override
+	public String toString() {
+		return getKey() + '\t' + outcome + '\t' + steps + '\t' + stunned + '\t' + wallNanos;
+	}
+
+}
@@ -0,0 +1,207 @@
+package zombieplanner.simulator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import zombieplanner.simulator.ZombieMap.CellType;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Everything about a simulated world that doesn't change from one trial to
+ * the next: the map, the zombie distribution (filtered to the cells zombies
+ * can be on, and normalized), and layers derived from them, such as which
+ * cells zombies can walk on and the sampler that places them.
+ *
+ * A world is built once, from private copies of the map and distribution, and
+ * never changes after, so any number of simulators and threads can share it
+ * without locking. Its map and distribution must be treated as read-only.
+ *
+ * Layers other code derives from a world, such as planners' cost fields, are
+ * kept on it (see {@link #getLayer(Object, Supplier)}), so everything sharing
+ * the world shares them, and they go when the world does.
+ *
+ * @author Tim Vergenz
+ */
+public class World {
+
+	private final ZombieMap map;
+	private final ProbabilityMap probDist;
+	private final int width, height;
+	private final boolean[] walkable;
+	private final CellSampler sampler;
+	private final int sourceModCount;
+
+	// flow fields for simulators on each thread to reuse
+	private final ThreadLocal<ZombieFlowField> flowFields = new ThreadLocal<ZombieFlowField>();
+
+	/**
+	 * Most derived layers kept per world; the least recently used go first.
+	 */
+	public static final int MAX_LAYERS = 32;
+
+	// derived layers by key
+	private final Map<Object,Object> layers = new LinkedHashMap<Object,Object>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object,Object> eldest) {
+			if (size() <= MAX_LAYERS)
+				return false;
+			if (eldest.getValue() instanceof Layer)
+				((Layer)eldest.getValue()).dropped();
+			return true;
+		}
+	};
+
+	/**
+	 * A derived layer that needs to know when the world drops it, e.g. to
+	 * stop listening for changes.
+	 */
+	public interface Layer {
+		public void dropped();
+	}
+
+	private static final int CACHE_SIZE = 4;
+
+	// worlds by source map and distribution, with the distribution's
+	// modCount when the world was built
+	private static final Map<ZombieMap,Map<ProbabilityMap,World>> cache =
+		new LinkedHashMap<ZombieMap,Map<ProbabilityMap,World>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ZombieMap,Map<ProbabilityMap,World>> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+
+	/**
+	 * Get a shared world for the given map and distribution, building it only
+	 * if there is no cached one or the distribution has been modified since.
+	 * The map is assumed not to change.
+	 */
+	public static World of(ZombieMap map, ProbabilityMap probDist) {
+		synchronized (cache) {
+			Map<ProbabilityMap,World> worlds = cache.get(map);
+			if (worlds == null) {
+				worlds = new LinkedHashMap<ProbabilityMap,World>(4, 0.75f, true) {
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<ProbabilityMap,World> eldest) {
+						return size() > CACHE_SIZE;
+					}
+				};
+				cache.put(map, worlds);
+			}
+			World world = worlds.get(probDist);
+			if (world == null || world.sourceModCount != probDist.getModCount()) {
+				world = new World(map, probDist);
+				worlds.put(probDist, world);
+			}
+			return world;
+		}
+	}
+
+	/**
+	 * Build a world from copies of a map and a zombie distribution; the
+	 * originals are left as they are.
+	 */
+	public World(ZombieMap map, ProbabilityMap probDist) {
+		if (map.dims() != 2)
+			throw new IllegalArgumentException("Cannot build world for " + map.dims() + "-D map.");
+		if (probDist.dims() != 2 || probDist.size(0) != map.size(0) || probDist.size(1) != map.size(1))
+			throw new IllegalArgumentException("Zombie distribution doesn't match the map's size.");
+		this.sourceModCount = probDist.getModCount();
+		this.width = map.size(0);
+		this.height = map.size(1);
+		int n = width * height;
+
+		// zombies only start out on clear cells
+		StaticZombieMap mapCopy = new StaticZombieMap(width, height);
+		this.walkable = new boolean[n];
+		ProbabilityMap filtered = new ProbabilityMap(width, height);
+		double[] from = probDist.getData(), to = filtered.getData();
+		System.arraycopy(map.getData(), 0, mapCopy.getData(), 0, n);
+		for (int i = 0; i < n; i++) {
+			walkable[i] = (mapCopy.typeOfLinear(i) == CellType.CLEAR);
+			to[i] = walkable[i] ? from[i] : 0;
+		}
+		filtered.normalize();
+		this.map = mapCopy;
+		this.probDist = filtered;
+		this.sampler = new CellSampler(filtered);
+	}
+
+	/**
+	 * Get the map. Don't modify it.
+	 */
+	public ZombieMap getMap() {
+		return map;
+	}
+
+	/**
+	 * Get the filtered and normalized zombie distribution. Don't modify it.
+	 */
+	public ProbabilityMap getProbDist() {
+		return probDist;
+	}
+
+	/**
+	 * Get a sampler that places zombies according to the distribution.
+	 */
+	public CellSampler getSampler() {
+		return sampler;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Whether zombies can walk on a cell (false out of bounds).
+	 */
+	public boolean isWalkable(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height && walkable[x + y*width];
+	}
+
+	/**
+	 * Get a flow field over this world for the calling thread. Simulators on
+	 * the same thread share it, since they only use it while stepping, so it
+	 * is only good until the next call on the thread.
+	 */
+	public ZombieFlowField getFlowField(int maxDepth) {
+		ZombieFlowField flow = flowFields.get();
+		if (flow == null || flow.getMaxDepth() != maxDepth) {
+			flow = new ZombieFlowField(this, maxDepth);
+			flowFields.set(flow);
+		}
+		return flow;
+	}
+
+	/**
+	 * Get a layer derived from this world, building it if there is none under
+	 * the given key (compared with equals, so a list of the things it depends
+	 * on will do). Layers are shared by everything using the world, so don't
+	 * modify them in ways others would notice.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getLayer(Object key, Supplier<? extends T> build) {
+		synchronized (layers) {
+			Object layer = layers.get(key);
+			if (layer == null) {
+				layer = build.get();
+				layers.put(key, layer);
+			}
+			return (T)layer;
+		}
+	}
+
+	/**
+	 * Get which cells zombies can walk on, by linear index. Shared, so don't
+	 * modify it.
+	 */
+	boolean[] getWalkable() {
+		return walkable;
+	}
+
+}
@@ -1,16 +1,21 @@
 package zombieplanner.simulator;
 
-import java.util.Map;
 import java.util.Random;
 
 import robotutils.data.IntCoord;
-import zombieplanner.simulator.ZombieMap.CellType;
 
+/**
+ * A single zombie. Zombies in a simulation are views of one slot of a
+ * {@link ZombiePopulation}, which holds the actual state; zombies created
+ * with a public constructor stand alone (e.g. for snapshots) and have id -1.
+ */
 public class Zombie {
 
-	private static int NEXT_ID = 0;
+	// the population this is a view of, or null if standalone
+	final ZombiePopulation population;
+	private final int k;
 
-	private int id;
+	// state of standalone zombies
 	private IntCoord position;
 	private boolean isAlive;
 	private double speed;
@@ -18,81 +23,87 @@ public class Zombie {
 	public static final double MIN_SPEED = 0.5;
 	public static final double MAX_SPEED = 1.5;
 
-	public Zombie(IntCoord position) {
-		this(position, new Random().nextDouble() * (MAX_SPEED-MIN_SPEED) + MIN_SPEED);
+	/**
+	 * Create a zombie with a random speed drawn from the given generator.
+	 */
+	public Zombie(IntCoord position, Random rand) {
+		this(position, rand.nextDouble() * (MAX_SPEED-MIN_SPEED) + MIN_SPEED);
 	}
 
 	public Zombie(IntCoord position, double speed) {
-		this.id = NEXT_ID++;
+		this.population = null;
+		this.k = -1;
 		this.position = position;
 		this.isAlive = true;
 		this.speed = speed;
 	}
 
+	Zombie(ZombiePopulation population, int k) {
+		this.population = population;
+		this.k = k;
+	}
+
+	/**
+	 * Get a standalone copy of this zombie's current state.
+	 */
+	public Zombie snapshot() {
+		Zombie copy = new Zombie(getPosition(), getSpeed());
+		copy.isAlive = isAlive();
+		return copy;
+	}
+
 	/**
 	 * Process one turn's worth of movement (taking speed into account)
 	 */
-	public void doTurn(Map<IntCoord,IntCoord> prevs, ZombieMap map) {
-		assert (MIN_SPEED <= speed) && (speed <= MAX_SPEED);
-		Random rand = new Random();
-		int numMoves = 0;
-		if (speed < 1.0) {
-			if (rand.nextDouble() < speed)
-				numMoves = 1;
-			else numMoves = 0;
-		}
-		else {
-			if (rand.nextDouble() < speed-1.0)
-				numMoves = 2;
-			else numMoves = 1;
-		}
-		while (numMoves-- > 0)
-			doMove(prevs, map);
+	public void doTurn(ZombieFlowField flow, Random rand) {
+		int cell = cell(flow.getWidth());
+		int next = ZombiePopulation.turn(cell, getSpeed(), flow, rand);
+		if (next != cell)
+			setPosition(new IntCoord(next % flow.getWidth(), next / flow.getWidth()));
 	}
 
 	/**
-	 * Process one movement for this zombie.
+	 * Process one movement for this zombie: one step along the flow field if
+	 * it reaches this zombie, otherwise a random step.
 	 */
-	public void doMove(Map<IntCoord,IntCoord> prevs, ZombieMap map) {
-		IntCoord zpos = this.getPosition();
-		if (prevs.containsKey(zpos)) {
-			if (prevs.get(zpos) != null)
-				this.setPosition(prevs.get(zpos));
-		}
-		else {
-			// TODO bias zombie walk
-			IntCoord[] moves = new IntCoord[] {
-				new IntCoord((int)zpos.get(0), (int)zpos.get(1)),
-				new IntCoord((int)zpos.get(0)+1, (int)zpos.get(1)),
-				new IntCoord((int)zpos.get(0)-1, (int)zpos.get(1)),
-				new IntCoord((int)zpos.get(0), (int)zpos.get(1)+1),
-				new IntCoord((int)zpos.get(0), (int)zpos.get(1)-1),
-			};
-			IntCoord moved = moves[new Random().nextInt(5)];
-			if (map.typeOf(moved.getInts()) == CellType.CLEAR)
-				this.setPosition(moved);
-		}
+	public void doMove(ZombieFlowField flow, Random rand) {
+		int cell = cell(flow.getWidth());
+		int next = ZombiePopulation.move(cell, flow, rand);
+		if (next != cell)
+			setPosition(new IntCoord(next % flow.getWidth(), next / flow.getWidth()));
+	}
+
+	private int cell(int width) {
+		if (population != null)
+			return population.cell(k);
+		return (int)position.get(0) + (int)position.get(1) * width;
 	}
 
 	public int getId() {
-		return id;
+		return (population != null) ? population.id(k) : -1;
 	}
 
 	public IntCoord getPosition() {
-		return position;
+		return (population != null) ? population.position(k) : position;
 	}
 	public void setPosition(IntCoord position) {
-		this.position = position;
+		if (population != null)
+			population.setCell(k, (int)position.get(0) + (int)position.get(1) * population.getWidth());
+		else
+			this.position = position;
 	}
 
 	public boolean isAlive() {
-		return isAlive;
+		return (population != null) ? population.isAlive(k) : isAlive;
 	}
 	public void setAlive(boolean alive) {
-		isAlive = alive;
+		if (population != null)
+			population.setAlive(k, alive);
+		else
+			isAlive = alive;
 	}
 
 	public double getSpeed() {
-		return speed;
+		return (population != null) ? population.speed(k) : speed;
 	}
 }
@@ -0,0 +1,152 @@
+package zombieplanner.simulator;
+
+import zombieplanner.simulator.ZombieMap.CellType;
+
+/**
+ * A breadth-first flow field from a single cell (the human) over the cells
+ * zombies can walk on, out to a maximum depth. Each reached cell points to its
+ * neighbor one step closer to the source, so zombies within range can follow
+ * it straight to the human.
+ *
+ * All state lives in arrays indexed by linear cell index ({@code x + y*width})
+ * and allocated once. Cells are marked with the generation of the search that
+ * reached them, so nothing has to be cleared between searches.
+ *
+ * @author Tim Vergenz
+ */
+public class ZombieFlowField {
+
+	private final int width, height;
+	private final int maxDepth;
+	private final boolean[] walkable;
+
+	private final int[] parent, depth, stamp;
+	private int generation = 0;
+	private int source = -1;
+
+	// ring buffer queue; never holds more than the cells within maxDepth
+	private final int[] queue;
+	private final int mask;
+
+	public ZombieFlowField(ZombieMap map, int maxDepth) {
+		this(map.size(0), map.size(1), walkable(map), maxDepth);
+	}
+
+	/**
+	 * Create a flow field over a world, sharing its layer of walkable cells
+	 * rather than building one.
+	 */
+	public ZombieFlowField(World world, int maxDepth) {
+		this(world.getWidth(), world.getHeight(), world.getWalkable(), maxDepth);
+	}
+
+	private static boolean[] walkable(ZombieMap map) {
+		if (map.dims() != 2)
+			throw new IllegalArgumentException("Cannot build flow field for " + map.dims() + "-D map.");
+		int width = map.size(0), height = map.size(1);
+		boolean[] walkable = new boolean[width * height];
+		for (int i = 0; i < walkable.length; i++)
+			walkable[i] = (map.typeOfLinear(i) == CellType.CLEAR);
+		return walkable;
+	}
+
+	private ZombieFlowField(int width, int height, boolean[] walkable, int maxDepth) {
+		this.width = width;
+		this.height = height;
+		this.maxDepth = maxDepth;
+		this.walkable = walkable;
+
+		int n = width * height;
+		this.parent = new int[n];
+		this.depth = new int[n];
+		this.stamp = new int[n];
+
+		// a diamond of radius r holds 2r(r+1)+1 cells
+		long cells = Math.min(n, 2L * maxDepth * (maxDepth + 1) + 1);
+		int capacity = Integer.highestOneBit((int)Math.max(1, cells - 1)) << 1;
+		this.queue = new int[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Recompute the field from a new source cell.
+	 */
+	public void compute(int source) {
+		generation++;
+		this.source = source;
+		stamp[source] = generation;
+		parent[source] = -1;
+		depth[source] = 0;
+
+		int head = 0, tail = 0;
+		queue[tail++ & mask] = source;
+		while (head != tail) {
+			int u = queue[head++ & mask];
+			int d = depth[u];
+			if (d >= maxDepth)
+				continue;
+			int x = u % width, y = u / width;
+			if (x > 0) tail = visit(u - 1, u, d, tail);
+			if (x < width - 1) tail = visit(u + 1, u, d, tail);
+			if (y > 0) tail = visit(u - width, u, d, tail);
+			if (y < height - 1) tail = visit(u + width, u, d, tail);
+		}
+	}
+
+	private int visit(int v, int u, int d, int tail) {
+		if (walkable[v] && stamp[v] != generation) {
+			stamp[v] = generation;
+			parent[v] = u;
+			depth[v] = d + 1;
+			queue[tail++ & mask] = v;
+		}
+		return tail;
+	}
+
+	/**
+	 * Whether the last search reached the given cell.
+	 */
+	public boolean contains(int i) {
+		return stamp[i] == generation && generation > 0;
+	}
+
+	/**
+	 * Get the next cell toward the source from a cell reached by the last
+	 * search, or -1 for the source itself.
+	 */
+	public int next(int i) {
+		return parent[i];
+	}
+
+	/**
+	 * Get the number of steps from a cell reached by the last search to the
+	 * source.
+	 */
+	public int depth(int i) {
+		return depth[i];
+	}
+
+	public int getSource() {
+		return source;
+	}
+
+	/**
+	 * Whether zombies can walk on the given cell; false outside the map.
+	 */
+	public boolean isWalkable(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height && walkable[x + y*width];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+}
@@ -0,0 +1,172 @@
+package zombieplanner.simulator;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import robotutils.data.IntCoord;
+
+/**
+ * A spatial index of the live zombies of a {@link ZombiePopulation}, bucketed
+ * by square blocks of cells. The population keeps it up to date as zombies
+ * move or die.
+ *
+ * Queries only look at the buckets that overlap the area searched, so they
+ * take time proportional to the number of zombies nearby rather than the size
+ * of the whole horde.
+ *
+ * @author Tim Vergenz
+ */
+public class ZombieIndex {
+
+	/**
+	 * Width and height of each bucket, in cells.
+	 */
+	public static final int BUCKET_SIZE = 8;
+
+	private final ZombiePopulation population;
+	private final int width, height;
+	private final int columns, rows;
+	private final int[][] buckets;
+	private final int[] counts;
+	private int size = 0;
+
+	// bucket and slot within the bucket of each zombie in the index
+	private int[] bucketOf = new int[16], slotOf = new int[16];
+
+	ZombieIndex(ZombiePopulation population) {
+		this.population = population;
+		this.width = population.getWidth();
+		this.height = population.getHeight();
+		this.columns = (width + BUCKET_SIZE - 1) / BUCKET_SIZE;
+		this.rows = (height + BUCKET_SIZE - 1) / BUCKET_SIZE;
+		this.buckets = new int[columns * rows][];
+		this.counts = new int[columns * rows];
+	}
+
+	private int bucket(int cell) {
+		return (cell % width) / BUCKET_SIZE + (cell / width) / BUCKET_SIZE * columns;
+	}
+
+	void insert(int k) {
+		if (k >= bucketOf.length) {
+			bucketOf = Arrays.copyOf(bucketOf, Math.max(2 * bucketOf.length, k + 1));
+			slotOf = Arrays.copyOf(slotOf, bucketOf.length);
+		}
+		int b = bucket(population.cell(k));
+		int[] bucket = buckets[b];
+		if (bucket == null)
+			bucket = buckets[b] = new int[4];
+		else if (counts[b] == bucket.length)
+			bucket = buckets[b] = Arrays.copyOf(bucket, 2 * bucket.length);
+		bucketOf[k] = b;
+		slotOf[k] = counts[b];
+		bucket[counts[b]++] = k;
+		size++;
+	}
+
+	void delete(int k) {
+		int b = bucketOf[k];
+		int[] bucket = buckets[b];
+		int last = bucket[--counts[b]];
+		bucket[slotOf[k]] = last;
+		slotOf[last] = slotOf[k];
+		size--;
+	}
+
+	/**
+	 * Called after a live zombie moves.
+	 */
+	void moved(int k) {
+		if (bucket(population.cell(k)) != bucketOf[k]) {
+			delete(k);
+			insert(k);
+		}
+	}
+
+	/**
+	 * Get the number of live zombies in the index.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Add every live zombie within the given Manhattan distance of a cell to
+	 * a collection.
+	 */
+	public <C extends Collection<? super Zombie>> C within(IntCoord pos, int radius, C out) {
+		int px = (int)pos.get(0), py = (int)pos.get(1);
+		int bx0 = Math.max(0, (px - radius) / BUCKET_SIZE);
+		int by0 = Math.max(0, (py - radius) / BUCKET_SIZE);
+		int bx1 = Math.min(columns - 1, Math.max(0, px + radius) / BUCKET_SIZE);
+		int by1 = Math.min(rows - 1, Math.max(0, py + radius) / BUCKET_SIZE);
+		for (int by = by0; by <= by1; by++)
+			for (int bx = bx0; bx <= bx1; bx++) {
+				int b = bx + by * columns;
+				for (int j = 0; j < counts[b]; j++) {
+					int k = buckets[b][j];
+					if (distance(k, px, py) <= radius)
+						out.add(population.get(k));
+				}
+			}
+		return out;
+	}
+
+	/**
+	 * Get the live zombie nearest to a cell by Manhattan distance, or null if
+	 * there is none within the given distance.
+	 */
+	public Zombie nearest(IntCoord pos, int maxRadius) {
+		int px = (int)pos.get(0), py = (int)pos.get(1);
+		int cx = Math.max(0, Math.min(columns - 1, px / BUCKET_SIZE));
+		int cy = Math.max(0, Math.min(rows - 1, py / BUCKET_SIZE));
+		int best = -1;
+		int min = maxRadius + 1;
+		int maxRing = Math.max(columns, rows);
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// anything in this ring is at least this far away along one axis
+			if (ring > 0 && (ring - 1) * BUCKET_SIZE + 1 >= min)
+				break;
+			for (int by = cy - ring; by <= cy + ring; by++) {
+				if (by < 0 || by >= rows)
+					continue;
+				boolean edge = (by == cy - ring || by == cy + ring);
+				int step = edge ? 1 : 2 * ring;
+				for (int bx = cx - ring; bx <= cx + ring; bx += Math.max(1, step)) {
+					if (bx < 0 || bx >= columns)
+						continue;
+					int b = bx + by * columns;
+					for (int j = 0; j < counts[b]; j++) {
+						int d = distance(buckets[b][j], px, py);
+						if (d < min) {
+							min = d;
+							best = buckets[b][j];
+						}
+					}
+				}
+			}
+		}
+		return (best < 0) ? null : population.get(best);
+	}
+
+	/**
+	 * Get a live zombie in the given cell, or null if there is none.
+	 */
+	public Zombie at(IntCoord pos) {
+		int px = (int)pos.get(0), py = (int)pos.get(1);
+		if (px < 0 || px >= width || py < 0 || py >= height)
+			return null;
+		int cell = px + py * width;
+		int b = bucket(cell);
+		for (int j = 0; j < counts[b]; j++)
+			if (population.cell(buckets[b][j]) == cell)
+				return population.get(buckets[b][j]);
+		return null;
+	}
+
+	private int distance(int k, int px, int py) {
+		int cell = population.cell(k);
+		return Math.abs(cell % width - px) + Math.abs(cell / width - py);
+	}
+
+}
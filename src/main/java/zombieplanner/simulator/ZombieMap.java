@@ -7,6 +7,13 @@ public interface ZombieMap extends GridMap {
 	public enum CellType {
 		CLEAR((byte)255), OBSTACLE((byte)0), BUILDING((byte)128);
 
+		// types by unsigned byte value
+		private static final CellType[] byByteVal = new CellType[256];
+		static {
+			for (CellType t : values())
+				byByteVal[t.val & 0xff] = t;
+		}
+
 		private byte val;
 		private CellType(byte val) {
 			this.val = val;
@@ -16,16 +23,44 @@ public interface ZombieMap extends GridMap {
 			return val;
 		}
 
+		/**
+		 * Get the type with the given byte value, or null if there is none.
+		 */
 		public static CellType fromByteVal(byte val) {
-			for (CellType t : values())
-				if (t.getByteVal() == val)
-					return t;
-			return null;
+			return byByteVal[val & 0xff];
 		}
 	}
 
+	/**
+	 * Bits of {@link #neighborsOf(int)} for the neighbors at x-1, x+1, y-1
+	 * and y+1.
+	 */
+	public static final int NEIGHBOR_LEFT = 1, NEIGHBOR_RIGHT = 2, NEIGHBOR_UP = 4, NEIGHBOR_DOWN = 8;
+
 	public CellType typeOf(int... idx);
 
 	public void set(CellType type, int... idx);
 
+	/*
+	 * Fast paths for 2-D maps, which don't allocate an index array. Cells
+	 * out of bounds read as 0 (obstacles), as they do through the varargs
+	 * methods; the linear ones take an index x + y*width in bounds.
+	 */
+
+	public byte get(int x, int y);
+
+	public byte getLinear(int i);
+
+	public CellType typeOf(int x, int y);
+
+	public CellType typeOfLinear(int i);
+
+	public void set(CellType type, int x, int y);
+
+	/**
+	 * Get which of a cell's four neighbors (in bounds) aren't obstacles, i.e.
+	 * which ways the human could move from it, as NEIGHBOR_* bits.
+	 */
+	public int neighborsOf(int i);
+
 }
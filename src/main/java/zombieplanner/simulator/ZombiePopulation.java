@@ -0,0 +1,521 @@
+package zombieplanner.simulator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import robotutils.data.IntCoord;
+
+/**
+ * All the zombies of one simulation, stored as parallel primitive arrays:
+ * linear cell index ({@code x + y*width}), speed, id, and an alive bit set.
+ * Zombies are addressed by their slot k, in the order they were added.
+ *
+ * Per-step work (movement, visibility, collisions) runs over the arrays
+ * directly, optionally in parallel chunks. Code that wants objects gets
+ * lightweight {@link Zombie} views from {@link #get(int)}; there is one view
+ * per slot, so views can be compared and hashed by identity.
+ *
+ * A {@link ZombieIndex} of the live zombies is kept up to date as zombies move
+ * or die.
+ *
+ * In lazy mode (see {@link #setLazyRadius(int)}) zombies far from the flow
+ * field's source are parked: they can only random-walk until they might come
+ * within the given radius, so nothing is done for them until then, and their
+ * missed turns are then fast-forwarded in one go. Positions of parked zombies
+ * are stale (but still outside the radius) until {@link #catchUp(Random)}.
+ *
+ * With per-zombie streams (see {@link #setStreamSeed(long)}) each zombie's
+ * moves on each tick are drawn from a stream of their own, seeded by the
+ * zombie and the tick. Two populations started alike then move alike no
+ * matter what else differs between their simulations, except where a zombie
+ * is chasing a human that went elsewhere; this is what lets planners be
+ * compared on common random numbers. Parked zombies are then fast-forwarded a
+ * turn at a time rather than in bulk, so that they move exactly as they would
+ * have if they had been stepped.
+ *
+ * @author Tim Vergenz
+ */
+public class ZombiePopulation implements Iterable<Zombie> {
+
+	/**
+	 * Zombies moved per task when moving in parallel. Fixed, so the random
+	 * streams (one per chunk) and thus the results don't depend on how many
+	 * threads there are.
+	 */
+	public static final int CHUNK_SIZE = 4096;
+
+	private final int width, height;
+	private int size = 0;
+	private int[] cells = new int[16];
+	private double[] speeds = new double[16];
+	private int[] ids = new int[16];
+	private long[] alive = new long[1];
+	private Zombie[] views = new Zombie[16];
+
+	private int nextId = 0;
+	private int[] moved = new int[0];
+
+	// lazy mode: tick each zombie was last moved to, and last tick it is
+	// certain to stay out of range (so it can be skipped) until
+	private int lazyRadius = -1;
+	private int tick = 0;
+	private int[] lastTicks = new int[16];
+	private int[] wakeTicks = new int[16];
+	private ZombieFlowField lastFlow;
+
+	// per-zombie streams, if on
+	private boolean perZombieStreams = false;
+	private long streamSeed;
+
+	private final ZombieIndex index;
+
+	public ZombiePopulation(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.index = new ZombieIndex(this);
+	}
+
+	/**
+	 * Add a live zombie.
+	 * @return its slot
+	 */
+	public int add(int cell, double speed) {
+		if (size == cells.length) {
+			int capacity = 2 * size;
+			cells = Arrays.copyOf(cells, capacity);
+			speeds = Arrays.copyOf(speeds, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+			views = Arrays.copyOf(views, capacity);
+			lastTicks = Arrays.copyOf(lastTicks, capacity);
+			wakeTicks = Arrays.copyOf(wakeTicks, capacity);
+		}
+		if ((size >> 6) == alive.length)
+			alive = Arrays.copyOf(alive, 2 * alive.length);
+		int k = size++;
+		cells[k] = cell;
+		speeds[k] = speed;
+		ids[k] = nextId++;
+		lastTicks[k] = wakeTicks[k] = tick;
+		alive[k >> 6] |= 1L << k;
+		index.insert(k);
+		return k;
+	}
+
+	/**
+	 * Add a live zombie with a random speed.
+	 * @return its slot
+	 */
+	public int add(int cell, Random rand) {
+		return add(cell, rand.nextDouble() * (Zombie.MAX_SPEED-Zombie.MIN_SPEED) + Zombie.MIN_SPEED);
+	}
+
+	/**
+	 * Get the number of zombies, dead or alive.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int cell(int k) {
+		return cells[k];
+	}
+
+	public IntCoord position(int k) {
+		return new IntCoord(cells[k] % width, cells[k] / width);
+	}
+
+	public double speed(int k) {
+		return speeds[k];
+	}
+
+	public int id(int k) {
+		return ids[k];
+	}
+
+	public boolean isAlive(int k) {
+		return (alive[k >> 6] & (1L << k)) != 0;
+	}
+
+	public void setCell(int k, int cell) {
+		// any missed turns are moot once a zombie is put somewhere
+		lastTicks[k] = wakeTicks[k] = tick;
+		moveTo(k, cell);
+	}
+
+	private void moveTo(int k, int cell) {
+		if (cells[k] == cell)
+			return;
+		cells[k] = cell;
+		if (isAlive(k))
+			index.moved(k);
+	}
+
+	public void setAlive(int k, boolean isAlive) {
+		if (isAlive == isAlive(k))
+			return;
+		if (isAlive) {
+			lastTicks[k] = wakeTicks[k] = tick;
+			alive[k >> 6] |= 1L << k;
+			index.insert(k);
+		}
+		else {
+			alive[k >> 6] &= ~(1L << k);
+			index.delete(k);
+		}
+	}
+
+	/**
+	 * Get the view of the zombie in slot k.
+	 */
+	public Zombie get(int k) {
+		if (k < 0 || k >= size)
+			throw new IndexOutOfBoundsException("No zombie " + k);
+		if (views[k] == null)
+			views[k] = new Zombie(this, k);
+		return views[k];
+	}
+
+	/**
+	 * Whether a zombie is a view of this population.
+	 */
+	public boolean contains(Zombie zombie) {
+		return zombie.population == this;
+	}
+
+	/**
+	 * Whether a zombie's position is up to date, i.e. it isn't parked by lazy
+	 * mode with turns still to be fast-forwarded.
+	 */
+	public boolean isCurrent(int k) {
+		return lastTicks[k] == tick || !isAlive(k);
+	}
+
+	/**
+	 * Turn lazy mode on: zombies that can't come within the given Manhattan
+	 * distance of the flow field's source (or within its reach, if further)
+	 * are skipped until they might. A negative radius turns it off.
+	 * @throws IllegalStateException if that would leave zombies parked, since
+	 *         catching them up takes random numbers; see
+	 *         {@link #setLazyRadius(int, Random)}
+	 */
+	public void setLazyRadius(int radius) {
+		setLazyRadius(radius, null);
+	}
+
+	/**
+	 * Turn lazy mode on or off, as {@link #setLazyRadius(int)}, catching up
+	 * any parked zombies when turning it off.
+	 * @param rand generator to catch them up with; may be null if each
+	 *        zombie has its own streams
+	 */
+	public void setLazyRadius(int radius, Random rand) {
+		if (radius < 0 && lazyRadius >= 0) {
+			if (rand == null && !perZombieStreams) {
+				for (int k = 0; k < size; k++)
+					if (!isCurrent(k))
+						throw new IllegalStateException("Need random numbers to catch up parked zombies");
+			}
+			else {
+				catchUp(rand);
+			}
+		}
+		this.lazyRadius = radius;
+	}
+
+	public int getLazyRadius() {
+		return lazyRadius;
+	}
+
+	/**
+	 * Draw each zombie's moves on each tick from its own stream, derived from
+	 * the given seed, rather than from the generator passed to
+	 * {@link #step(ZombieFlowField, Random, ForkJoinPool)}.
+	 */
+	public void setStreamSeed(long seed) {
+		this.perZombieStreams = true;
+		this.streamSeed = seed;
+	}
+
+	/**
+	 * Get the number of times the population has been stepped.
+	 */
+	public int getTick() {
+		return tick;
+	}
+
+	/**
+	 * Fast-forward every parked zombie to the current tick, e.g. to draw them.
+	 * They stay parked as long as they did before.
+	 */
+	public void catchUp(Random rand) {
+		if (perZombieStreams)
+			rand = new SplitMixRandom(0);
+		for (int k = 0; k < size; k++) {
+			if (isAlive(k) && lastTicks[k] < tick) {
+				moveTo(k, fastForward(k, cells[k], tick, lastFlow, rand));
+				lastTicks[k] = tick;
+			}
+		}
+	}
+
+	public ZombieIndex getIndex() {
+		return index;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Iterate over views of all zombies, dead or alive.
+	 */
+	@Override
+	public Iterator<Zombie> iterator() {
+		return new Iterator<Zombie>() {
+			private int k = 0;
+
+			@Override
+			public boolean hasNext() {
+				return k < size;
+			}
+
+			@Override
+			public Zombie next() {
+				if (k >= size)
+					throw new NoSuchElementException();
+				return get(k++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Move every live zombie for one turn.
+	 * @param pool pool to move chunks of zombies in parallel on, or null to
+	 *        move them on this thread; results are the same either way
+	 */
+	public void step(final ZombieFlowField flow, Random rand, ForkJoinPool pool) {
+		final long seed = rand.nextLong();
+		if (moved.length < size)
+			moved = new int[cells.length];
+		tick++;
+		lastFlow = flow;
+		final int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		if (pool == null || chunks <= 1) {
+			for (int c = 0; c < chunks; c++)
+				stepChunk(c, flow, seed);
+		}
+		else {
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute() {
+					RecursiveAction[] tasks = new RecursiveAction[chunks];
+					for (int c = 0; c < chunks; c++) {
+						final int chunk = c;
+						tasks[c] = new RecursiveAction() {
+							private static final long serialVersionUID = 1L;
+							@Override
+							protected void compute() {
+								stepChunk(chunk, flow, seed);
+							}
+						};
+					}
+					invokeAll(tasks);
+				}
+			});
+		}
+
+		// apply the moves here, so the index is only touched by one thread
+		for (int k = 0; k < size; k++)
+			if (isAlive(k))
+				moveTo(k, moved[k]);
+	}
+
+	private void stepChunk(int chunk, ZombieFlowField flow, long seed) {
+		Random rand = new SplitMixRandom(SplitMixRandom.mix(seed, chunk));
+		int end = Math.min(size, (chunk + 1) * CHUNK_SIZE);
+		if (lazyRadius < 0) {
+			for (int k = chunk * CHUNK_SIZE; k < end; k++) {
+				moved[k] = isAlive(k) ? turn(cells[k], speeds[k], flow, streamFor(k, tick, rand)) : cells[k];
+				lastTicks[k] = wakeTicks[k] = tick;
+			}
+			return;
+		}
+
+		int radius = Math.max(lazyRadius, flow.getMaxDepth());
+		int source = flow.getSource();
+		int sx = source % width, sy = source / width;
+		for (int k = chunk * CHUNK_SIZE; k < end; k++) {
+			int cell = cells[k];
+			if (!isAlive(k) || wakeTicks[k] >= tick) {
+				moved[k] = cell;
+				continue;
+			}
+			if (lastTicks[k] < tick - 1)
+				cell = fastForward(k, cell, tick - 1, flow, rand);
+			cell = turn(cell, speeds[k], flow, streamFor(k, tick, rand));
+			moved[k] = cell;
+			lastTicks[k] = tick;
+
+			// the zombie and the source each close the gap by at most 2 and 1
+			// cells a tick, so the zombie only random-walks until it's within
+			// radius; (d - radius - 1)/3 more ticks are safe to skip
+			int d = Math.abs(cell % width - sx) + Math.abs(cell / width - sy);
+			wakeTicks[k] = (d > radius) ? tick + (d - radius - 1) / 3 : tick;
+		}
+	}
+
+	/**
+	 * Get where a zombie with the given speed ends up after one turn of
+	 * movement: it moves once or twice (or not at all) depending on its speed.
+	 */
+	static int turn(int cell, double speed, ZombieFlowField flow, Random rand) {
+		return turn(cell, speed, flow, true, rand);
+	}
+
+	/**
+	 * @param chase whether to follow the flow field where it reaches, or just
+	 *        random-walk
+	 */
+	private static int turn(int cell, double speed, ZombieFlowField flow, boolean chase, Random rand) {
+		assert (Zombie.MIN_SPEED <= speed) && (speed <= Zombie.MAX_SPEED);
+		int numMoves = 0;
+		if (speed < 1.0) {
+			if (rand.nextDouble() < speed)
+				numMoves = 1;
+			else numMoves = 0;
+		}
+		else {
+			if (rand.nextDouble() < speed-1.0)
+				numMoves = 2;
+			else numMoves = 1;
+		}
+		while (numMoves-- > 0)
+			cell = chase ? move(cell, flow, rand) : wander(cell, flow, rand);
+		return cell;
+	}
+
+	/**
+	 * Get where parked zombie k, now in the given cell, is by the given tick.
+	 */
+	private int fastForward(int k, int cell, int toTick, ZombieFlowField flow, Random rand) {
+		if (!perZombieStreams)
+			return walk(cell, speeds[k], toTick - lastTicks[k], flow, rand);
+		// the flow field is from this tick, not the ones being caught up on,
+		// but the zombie was out of reach of those anyway
+		for (int t = lastTicks[k] + 1; t <= toTick; t++)
+			cell = turn(cell, speeds[k], flow, false, streamFor(k, t, rand));
+		return cell;
+	}
+
+	/**
+	 * Get the generator for zombie k's moves on the given tick: its own stream
+	 * if per-zombie streams are on (reseeding the given generator, which must
+	 * be a {@link SplitMixRandom}), otherwise the given generator.
+	 */
+	private Random streamFor(int k, int t, Random rand) {
+		if (perZombieStreams)
+			rand.setSeed(SplitMixRandom.mix(SplitMixRandom.mix(streamSeed, ids[k]), t));
+		return rand;
+	}
+
+	/**
+	 * Get where a zombie with the given speed ends up after some turns of
+	 * random walking, i.e. without ever being reached by the flow field. The
+	 * number of moves and how many of them aren't "stay put" are drawn in
+	 * bulk, as are the directions (two bits each), so this costs one step
+	 * per cell actually tried rather than a few draws per move.
+	 */
+	static int walk(int cell, double speed, int turns, ZombieFlowField flow, Random rand) {
+		int numMoves = (speed < 1.0)
+				? binomial(turns, speed, rand)
+				: turns + binomial(turns, speed-1.0, rand);
+		int steps = binomial(numMoves, 0.8, rand);
+		int w = flow.getWidth();
+		int x = cell % w, y = cell / w;
+		int bits = 0;
+		for (int s = 0; s < steps; s++) {
+			if ((s & 15) == 0)
+				bits = rand.nextInt();
+			int nx = x, ny = y;
+			switch (bits & 3) {
+			case 0: nx++; break;
+			case 1: nx--; break;
+			case 2: ny++; break;
+			case 3: ny--; break;
+			}
+			bits >>>= 2;
+			if (flow.isWalkable(nx, ny)) {
+				x = nx;
+				y = ny;
+			}
+		}
+		return x + y*w;
+	}
+
+	/**
+	 * Draw from a binomial distribution by skipping geometrically between
+	 * successes (or failures, whichever are rarer), so it takes time
+	 * proportional to their number rather than to n.
+	 */
+	static int binomial(int n, double p, Random rand) {
+		if (p <= 0 || n <= 0)
+			return 0;
+		if (p >= 1)
+			return n;
+		if (p > 0.5)
+			return n - binomial(n, 1.0-p, rand);
+		double logQ = Math.log(1.0 - p);
+		int count = 0;
+		double i = 0;
+		while (true) {
+			i += Math.floor(Math.log(1.0 - rand.nextDouble()) / logQ) + 1;
+			if (i > n)
+				return count;
+			count++;
+		}
+	}
+
+	/**
+	 * Get where a zombie ends up after one movement: one step along the flow
+	 * field if it reaches the zombie, otherwise a random step.
+	 */
+	static int move(int cell, ZombieFlowField flow, Random rand) {
+		if (flow.contains(cell)) {
+			int next = flow.next(cell);
+			return (next >= 0) ? next : cell;
+		}
+		return wander(cell, flow, rand);
+	}
+
+	/**
+	 * Get where a zombie ends up after one random step.
+	 */
+	private static int wander(int cell, ZombieFlowField flow, Random rand) {
+		// TODO bias zombie walk
+		int w = flow.getWidth();
+		int x = cell % w, y = cell / w;
+		switch (rand.nextInt(5)) {
+		case 1: x++; break;
+		case 2: x--; break;
+		case 3: y++; break;
+		case 4: y--; break;
+		}
+		return flow.isWalkable(x, y) ? x + y*w : cell;
+	}
+
+}
@@ -5,6 +5,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.text.SimpleDateFormat;
@@ -14,10 +15,11 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
@@ -32,10 +34,12 @@ import robotutils.data.IntCoord;
 import zombieplanner.planner.RiskAverseZombiePlanner;
 import zombieplanner.planner.SimpleZombiePlanner;
 import zombieplanner.planner.ZombiePlanner;
+import zombieplanner.simulator.ExperimentRunner.PlannerStats;
 import zombieplanner.simulator.ZombieMap.CellType;
 import zombieplanner.simulator.impl.GTMapGenerator;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -50,21 +54,63 @@ public class ZombieSimulator {
 
 	private final static Logger log = Logger.getLogger(ZombieSimulator.class.getName());
 
-	protected ZombieMap map;
-	protected ProbabilityMap probDist;
+	protected final World world;
+	protected final ZombieMap map;
+	protected final ProbabilityMap probDist;
 	protected IntCoord human;
 	protected IntCoord goal;
-	protected Set<Zombie> zombies;
+	protected ZombiePopulation zombies;
 	protected ZombiePlanner planner;
 
 	protected int totalSteps = 0;
 	protected int zombiesStunned = 0;
 
+	// pool to move zombies on in parallel, if any
+	private ForkJoinPool movementPool;
+
+	// every random draw in a simulation comes from these, split off one seed
+	private final long seed;
+	private final SplitMixRandom placementRandom, zombieRandom, stunRandom, catchUpRandom;
+	private final long streamSeed;
+	private boolean perZombieStreams = false;
+
+	// whether to skip zombies too far away to matter yet
+	private boolean lazyZombies = true;
+
 	public ZombieSimulator(ZombieMap map, ProbabilityMap probDist, ZombiePlanner planner) {
-		this.map = map;
-		this.probDist = probDist;
-		GTMapGenerator.filterAndNormProbabilityMap(probDist, map);
+		this(map, probDist, planner, new Random().nextLong());
+	}
+
+	/**
+	 * Create a simulator of the shared world for the given map and zombie
+	 * distribution (see {@link World#of(ZombieMap, ProbabilityMap)}).
+	 */
+	public ZombieSimulator(ZombieMap map, ProbabilityMap probDist, ZombiePlanner planner, long seed) {
+		this(World.of(map, probDist), planner, seed);
+	}
+
+	/**
+	 * Create a simulator whose zombie placement, zombie movement and stun
+	 * outcomes are all determined by the given seed, so a run can be replayed
+	 * exactly (as long as the planner is deterministic). The world is only
+	 * read, so it can be shared with any number of other simulators.
+	 */
+	public ZombieSimulator(World world, ZombiePlanner planner, long seed) {
+		this.world = world;
+		this.map = world.getMap();
+		this.probDist = world.getProbDist();
 		this.planner = planner;
+		this.seed = seed;
+		SplitMixRandom random = new SplitMixRandom(seed);
+		this.placementRandom = random.split();
+		this.zombieRandom = random.split();
+		this.stunRandom = random.split();
+		this.catchUpRandom = random.split();
+		this.streamSeed = random.nextLong();
+	}
+
+	public long getSeed() {
+		return seed;
 	}
 
 	protected void setHumanPosition(IntCoord position) {
@@ -80,6 +126,10 @@ public class ZombieSimulator {
 		return (human != null) && (goal != null);
 	}
 
+	public World getWorld() {
+		return world;
+	}
+
 	public ZombieMap getMap() {
 		return map;
 	}
@@ -102,14 +152,13 @@ public class ZombieSimulator {
 			IntCoord curr = sim.human;
 			int nx = (int)curr.get(0) + dx;
 			int ny = (int)curr.get(1) + dy;
-			IntCoord next = new IntCoord(nx, ny);
 
-			if (sim.map.typeOf(next.getInts()) == CellType.OBSTACLE) {
+			if (sim.map.typeOf(nx, ny) == CellType.OBSTACLE) {
 				throw new IllegalArgumentException(
 					"Action " + toString() + " collides with obstacle!"
 				);
 			}
-			sim.human = next;
+			sim.human = new IntCoord(nx, ny);
 		}
 	}
 
@@ -127,14 +176,13 @@ public class ZombieSimulator {
 		public void execute(ZombieSimulator sim) {
 			assert sim.zombies.contains(target);
 
-			Random rand = new Random();
 			double dist = CoordUtils.mdist(sim.human, target.getPosition());
 
 			if (dist > MAX_STUN_DISTANCE) return;
 
 			double p = 0.65 - (0.1)*(dist);
 
-			if (rand.nextDouble() < p) {
+			if (sim.stunDraw(target) < p) {
 				target.setAlive(false);
 				sim.zombiesStunned++;
 			}
@@ -176,36 +224,85 @@ public class ZombieSimulator {
 			), new Predicate<IntCoord>() {
 				@Override
 				public boolean apply(IntCoord _pos) {
-					return map.typeOf(_pos.getInts()) == CellType.CLEAR;
+					return map.typeOf((int)_pos.get(0), (int)_pos.get(1)) == CellType.CLEAR;
 				}
 			});
 	}
 
 	public static int NUM_ZOMBIES = 50;
 
-	public void initializeZombies() {
-		zombies = Sets.newHashSet();
-		Random rand = new Random();
-		for (int n=0; n<NUM_ZOMBIES; n++) {
-			double x = rand.nextDouble();
-			double sum = 0.0;
-			IntCoord pos = null;
-			for (int i=0; i<map.size(0); i++) {
-				for (int j=0; j<map.size(1); j++) {
-					sum += probDist.get(i, j);
-					if (x <= sum) {
-						pos = new IntCoord(i,j);
-					}
-					if (pos != null)
-						break;
-				}
-				if (pos != null)
-					break;
-			}
-			zombies.add(new Zombie(pos));
-		}
+	private int numZombies = NUM_ZOMBIES;
+
+	/**
+	 * Set the number of zombies created by {@link #initializeZombies()}
+	 * (defaults to {@link #NUM_ZOMBIES} at construction time).
+	 */
+	public void setNumZombies(int numZombies) {
+		this.numZombies = numZombies;
+	}
+
+	/**
+	 * Move zombies in parallel chunks on the given pool (or on the calling
+	 * thread if null, the default). Worth it for very large hordes only; the
+	 * results are the same either way.
+	 */
+	public void setMovementPool(ForkJoinPool pool) {
+		this.movementPool = pool;
+	}
+
+	/**
+	 * Whether to leave zombies that are too far from the human to see it or
+	 * be seen alone until they might be (on by default). Either way zombies
+	 * move the same, statistically; positions of far zombies are only up to
+	 * date after {@link #catchUpZombies()}.
+	 */
+	public void setLazyZombies(boolean lazy) {
+		this.lazyZombies = lazy;
+		if (zombies != null)
+			zombies.setLazyRadius(lazy ? VIEW_RADIUS : -1, catchUpRandom);
+	}
 
-		planner.initialize(map, probDist);
+	/**
+	 * Give every zombie its own random streams for moving and for being
+	 * stunned, keyed by zombie and step, instead of sharing one stream per
+	 * simulation. Simulations with the same seed then see the same zombies
+	 * do the same things except where the humans' actions differ, so
+	 * planners can be compared on common random numbers (see
+	 * {@link ExperimentRunner#setPaired(boolean)}). Off by default.
+	 */
+	public void setPerZombieStreams(boolean perZombieStreams) {
+		this.perZombieStreams = perZombieStreams;
+	}
+
+	private double stunDraw(Zombie target) {
+		if (!perZombieStreams)
+			return stunRandom.nextDouble();
+		long zombieSeed = SplitMixRandom.mix(streamSeed ^ 0x5bd1e995L, target.getId());
+		return new SplitMixRandom(SplitMixRandom.mix(zombieSeed, totalSteps)).nextDouble();
+	}
+
+	/**
+	 * Bring every zombie's position up to date, e.g. to draw them. This draws
+	 * on a stream of its own, so unless zombies have their own streams (see
+	 * {@link #setPerZombieStreams(boolean)}) a simulation that is caught up
+	 * along the way plays out differently from one that isn't.
+	 */
+	public void catchUpZombies() {
+		if (zombies != null)
+			zombies.catchUp(catchUpRandom);
+	}
+
+	public void initializeZombies() {
+		zombies = new ZombiePopulation(map.size(0), map.size(1));
+		zombies.setLazyRadius(lazyZombies ? VIEW_RADIUS : -1);
+		if (perZombieStreams)
+			zombies.setStreamSeed(streamSeed);
+		Random rand = placementRandom;
+		CellSampler sampler = world.getSampler();
+		for (int n=0; n<numZombies; n++)
+			zombies.add(sampler.sample(rand), rand);
+
+		planner.initialize(world);
 		setState(GameState.ACTIVE);
 	}
 
@@ -232,11 +329,7 @@ public class ZombieSimulator {
 
 		// get the zombies within the player's view radius
 		Set<Zombie> visibleZombies
-			= Sets.filter(zombies, new Predicate<Zombie>() {
-				@Override public boolean apply(Zombie zombie) {
-					return isVisible(zombie.getPosition()) && zombie.isAlive();
-				}
-			});
+			= zombies.getIndex().within(human, VIEW_RADIUS, Sets.<Zombie>newLinkedHashSet());
 
 		Action action = planner.getAction(human, visibleZombies);
 		if (action == null) {
@@ -249,44 +342,21 @@ public class ZombieSimulator {
 		this.totalSteps++;
 
 		// run BFS from human to move zombies toward
-		Queue<IntCoord> queue = Lists.newLinkedList();
-		Map<IntCoord,IntCoord> prevs = Maps.newHashMap();
-		Map<IntCoord,Integer> depths = Maps.newHashMap();
-		queue.add(human);
-		prevs.put(human, null);
-		depths.put(human, 0);
-		while (!queue.isEmpty()) {
-			IntCoord pos = queue.poll();
-			Integer d = depths.get(pos);
-			if (d.intValue() < ZOMBIE_VIEW_RADIUS) {
-				for (IntCoord neighbor : getNeighbors(pos)) {
-					if (!prevs.containsKey(neighbor)) {
-						prevs.put(neighbor, pos);
-						depths.put(neighbor, d + 1);
-						queue.add(neighbor);
-					}
-				}
-			}
-		}
+		ZombieFlowField flow = world.getFlowField(ZOMBIE_VIEW_RADIUS);
+		flow.compute((int)human.get(0) + (int)human.get(1) * map.size(0));
 
-		for (Zombie zombie : zombies)
-			if (zombie.isAlive() && zombie.getPosition().equals(human)) {
-				state = GameState.FAILURE;
-				return;
-			}
+		if (zombies.getIndex().at(human) != null) {
+			state = GameState.FAILURE;
+			return;
+		}
 
 		// process zombie movement
-		for (Zombie zombie : zombies) {
-			if (!zombie.isAlive())
-				continue;
-			zombie.doTurn(prevs, map);
-		}
+		zombies.step(flow, zombieRandom, movementPool);
 
-		for (Zombie zombie : zombies)
-			if (zombie.isAlive() && zombie.getPosition().equals(human)) {
-				state = GameState.FAILURE;
-				return;
-			}
+		if (zombies.getIndex().at(human) != null) {
+			state = GameState.FAILURE;
+			return;
+		}
 
 		if (human.equals(goal)) {
 			state = GameState.SUCCESS;
@@ -305,14 +375,38 @@ public class ZombieSimulator {
 	public static final int NUM_CONFIGS = 20;
 	public static final int TRIALS_PER_CONFIG = 50;
 
+	/**
+	 * Half-width of the 95% interval on the difference between the Risk
+	 * Averse and Simple planners' success rates at which a configuration
+	 * stops getting trials.
+	 */
+	public static final double PRECISION = 0.1;
+
+	/**
+	 * Closest start and goal of a configuration can be, by Manhattan distance.
+	 */
+	public static final int MIN_CONFIG_DISTANCE = 50;
+
 	/**
 	 * Run a simulation without the user interface.
-	 * @param args
+	 * @param args optionally, the seed for the whole experiment, and
+	 *        {@code --interactive} to have each configuration run in the UI and
+	 *        confirmed by hand before it's used
 	 * @throws InvocationTargetException
 	 * @throws InterruptedException
 	 */
 	public static void main(String[] args) throws SecurityException, IOException, InterruptedException, InvocationTargetException {
 
+		boolean interactive = false;
+		Long seedArg = null;
+		for (String arg : args) {
+			if (arg.equals("--interactive"))
+				interactive = true;
+			else
+				seedArg = Long.parseLong(arg);
+		}
+
+		new File("log").mkdirs();
 		String fname = new SimpleDateFormat("'log/'yyyy-MM-dd HH.mm.ss.SSS'.txt'").format(new Date());
 		FileHandler fh = new FileHandler(fname);
 		fh.setFormatter(new Formatter() {
@@ -333,173 +427,176 @@ public class ZombieSimulator {
 		log.addHandler(h);
 
 		log.info(SimpleDateFormat.getDateTimeInstance().format(new Date()));
+		long seed = (seedArg != null) ? seedArg : new Random().nextLong();
+		log.info("Seed: " + seed);
 		log.info("");
+		SplitMixRandom random = new SplitMixRandom(seed);
 
-		ZombieMap map = GTMapGenerator.loadGTMap();
-		ProbabilityMap probDist = GTMapGenerator.loadGTZombieProbabilities(0.1);
+		World world = new World(GTMapGenerator.loadGTMap(), GTMapGenerator.loadGTZombieProbabilities(0.1));
 
 		log.info("Getting " + NUM_CONFIGS + " random start/end positions");
 
-		// build a user-checked list of valid start/end pairs
+		// build a list of valid start/end pairs, checked by the user if
+		// interactive
+		ConfigGenerator configs = new ConfigGenerator(world.getMap());
+		configs.setDistanceRange(MIN_CONFIG_DISTANCE, Integer.MAX_VALUE);
 		final List<IntCoord[]> locationsToTest = Lists.newArrayList();
 		while (locationsToTest.size() < NUM_CONFIGS) {
-			// random start configuration
-			final IntCoord start = getRandomLocation(map);
-			final IntCoord goal = getRandomLocation(map);
-
-			final ZombiePlanner planner = new RiskAverseZombiePlanner();
-			final ZombieSimulator sim = new ZombieSimulator(map, probDist, planner);
-			final AtomicBoolean done = new AtomicBoolean();
-			final AtomicBoolean cancel = new AtomicBoolean();
-
-			final ZombieSimulatorUI ui = new ZombieSimulatorUI(sim) {
-				@Override
-				public void step() {
-					super.step();
-					if (sim.getState() != GameState.ACTIVE) {
-						done.set(true);
-					}
-				}
-			};
-
-			ui.getJFrame().setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-			ui.getJFrame().addWindowListener(new WindowAdapter() {
-				@Override
-				public void windowClosing(WindowEvent e) {
-					done.set(true);
-				}
-			});
-
-			// initialize the positions and the zombies
-			EventQueue.invokeAndWait(new Runnable() {
-				@Override
-				public void run() {
-					ui.mapClicked((int)start.get(0), (int)start.get(1), MouseEvent.BUTTON1, 1);
-					ui.mapClicked((int)goal.get(0), (int)goal.get(1), MouseEvent.BUTTON3, 1);
-					ui.actionPerformed(new ActionEvent(sim, 0, "Initialize Zombies"));
-				}
-			});
-
-			// wait until the user finishes the simulation
-			while (!done.get());
-
-			// ask if they want to keep it
-			EventQueue.invokeAndWait(new Runnable() {
-				@Override
-				public void run() {
-					int result = JOptionPane.showConfirmDialog(null,
-							"Use this configuration in simulations?",
-							"Keep Configuration",
-							JOptionPane.YES_NO_CANCEL_OPTION);
-					switch (result) {
-					case JOptionPane.YES_OPTION:
-						log.info("Adding config " + locationsToTest.size() + ": " + start + "/" + goal);
-						locationsToTest.add(new IntCoord[] {start, goal});
-						break;
-					case JOptionPane.CANCEL_OPTION:
-						cancel.set(true);
-						break;
-					}
+			IntCoord[] config = configs.next(random);
+			if (interactive) {
+				Boolean keep = confirmConfig(world, config[0], config[1]);
+				if (keep == null) {
+					log.info("Cancelling experiment");
+					return;
 				}
-			});
-
-			if (cancel.get()) {
-				log.info("Cancelling experiment");
-				return;
+				if (!keep)
+					continue;
 			}
-
-			ui.closeFrame();
-
+			log.info("Adding config " + locationsToTest.size() + ": " + config[0] + "/" + config[1]);
+			locationsToTest.add(config);
 		}
 		log.info("");
 
 		// locationsToTest is now initialized with valid start/end configurations
 
 //		log.info("NUM_TRIALS: " + NUM_TRIALS);
-		log.info("Running " + TRIALS_PER_CONFIG + " trials per configuration");
+		log.info("Running up to " + TRIALS_PER_CONFIG + " trials per configuration on average,"
+				+ " until RA-Simple success rates are known to within " + PRECISION);
 		log.info("");
 
-		for (NUM_ZOMBIES = 40; NUM_ZOMBIES <= 70; NUM_ZOMBIES+=10) {
-			log.info("=== NUM_ZOMBIES: " + NUM_ZOMBIES + " ===");
-			log.info("");
-
-			for (int configNum=0; configNum < NUM_CONFIGS; configNum++) {
+		ExperimentRunner runner = new ExperimentRunner(world);
+		runner.setPaired(true);
 
-				final IntCoord start = locationsToTest.get(configNum)[0];
-				final IntCoord goal = locationsToTest.get(configNum)[1];
-				log.info("== Start: " + start + " / Goal: " + goal + " ==");
-
-				Map<String,ZombiePlanner> planners = Maps.newLinkedHashMap();
-				ZombiePlanner riskaverse, simple;
-				planners.put("Risk Averse Planner", riskaverse = new RiskAverseZombiePlanner());
-				planners.put("Simple Planner", simple = new SimpleZombiePlanner());
-
-				Map<ZombiePlanner,Integer> successes = Maps.newLinkedHashMap();
-				Map<ZombiePlanner,Integer> totalSteps = Maps.newLinkedHashMap();
-				Map<ZombiePlanner,Integer> zombiesStunned = Maps.newLinkedHashMap();
-
-				long startTime = System.nanoTime();
-				for (int i=0; i<TRIALS_PER_CONFIG; i++) {
-
-					for (Entry<String,ZombiePlanner> e : planners.entrySet()) {
-						ZombiePlanner planner = e.getValue();
+		// rerunning with the same seed resumes from the trials recorded here
+		ResultsSink sink = new ResultsSink(new File("log/results-" + seed + ".tsv"));
+		log.info("Recording results in log/results-" + seed + ".tsv"
+				+ (sink.size() > 0 ? " (resuming after " + sink.size() + ")" : ""));
+		log.info("");
+		runner.setSink(sink);
 
-						ZombieSimulator sim = new ZombieSimulator(map, probDist, e.getValue());
+		Map<String,Supplier<ZombiePlanner>> planners = Maps.newLinkedHashMap();
+		planners.put("Risk Averse Planner", new Supplier<ZombiePlanner>() {
+			@Override
+			public ZombiePlanner get() {
+				return new RiskAverseZombiePlanner();
+			}
+		});
+		planners.put("Simple Planner", new Supplier<ZombiePlanner>() {
+			@Override
+			public ZombiePlanner get() {
+				return new SimpleZombiePlanner();
+			}
+		});
 
-						sim.setHumanPosition(start);
-						sim.setGoalPosition(goal);
-						sim.initializeZombies();
+		for (NUM_ZOMBIES = 40; NUM_ZOMBIES <= 70; NUM_ZOMBIES+=10) {
+			log.info("=== NUM_ZOMBIES: " + NUM_ZOMBIES + " ===");
+			log.info("");
 
-						while (sim.getState() == GameState.ACTIVE) {
-							sim.stepOnce();
-						}
+			AdaptiveExperiment experiment
+				= new AdaptiveExperiment(runner, planners, "Risk Averse Planner", "Simple Planner");
+			experiment.setPrecision(PRECISION);
+			experiment.setTrialLimits(TRIALS_PER_CONFIG / 2, 4 * TRIALS_PER_CONFIG);
+			for (IntCoord[] location : locationsToTest)
+				experiment.addConfig(location[0], location[1], random.nextLong());
+
+			long startTime = System.nanoTime();
+			int trials = experiment.run(NUM_ZOMBIES, TRIALS_PER_CONFIG * NUM_CONFIGS);
+			long endTime = System.nanoTime();
+			log.info("Total time: " + (endTime - startTime)/1000000000 + "s for " + trials + " trials");
+			log.info("");
 
-						if (!successes.containsKey(planner))
-							successes.put(planner, 0);
-						if (!totalSteps.containsKey(planner))
-							totalSteps.put(planner, 0);
-						if (!zombiesStunned.containsKey(planner))
-							zombiesStunned.put(planner, 0);
-						successes.put(planner, successes.get(planner) + (sim.getState() == GameState.SUCCESS ? 1 : 0));
-						totalSteps.put(planner, totalSteps.get(planner) + sim.totalSteps);
-						if (sim.getState() == GameState.SUCCESS)
-							zombiesStunned.put(planner, zombiesStunned.get(planner) + sim.zombiesStunned);
-					}
-				}
-				long endTime = System.nanoTime();
-				log.info("Total time: " + (endTime - startTime)/1000000000 + "s");
+			for (AdaptiveExperiment.Config config : experiment.getConfigs()) {
+				log.info("== Start: " + config.getStart() + " / Goal: " + config.getGoal() + " ==");
+				log.info("Trials: " + config.getTrials() + (config.isDecided() ? "" : " (undecided)"));
 				log.info("");
 
-				for (Entry<String,ZombiePlanner> e : planners.entrySet()) {
+				Map<String,PlannerStats> stats = config.getStats();
+				for (Entry<String,PlannerStats> e : stats.entrySet()) {
 					log.info("Planner: " + e.getKey());
-					log.info("Average steps: " + ((double)totalSteps.get(e.getValue())/TRIALS_PER_CONFIG));
-//					log.info("Avg zombies stunned (success only): " + ((double)zombiesStunned.get(e.getValue())/TRIALS_PER_CONFIG));
-					log.info("% success: " + ((double)successes.get(e.getValue())/TRIALS_PER_CONFIG));
+					log.info("Average steps: " + e.getValue().getStepsInterval(Interval.Z_95));
+//					log.info("Avg zombies stunned (success only): " + e.getValue().getAverageStunned());
+					log.info("% success: " + e.getValue().getSuccessInterval(Interval.Z_95));
 					log.info("");
 				}
 
-				double raSucc = (double)successes.get(riskaverse)/NUM_TRIALS;
-				double simpleSucc = (double)successes.get(simple)/NUM_TRIALS;
+				double raSucc = stats.get("Risk Averse Planner").getSuccessRate();
+				double simpleSucc = stats.get("Simple Planner").getSuccessRate();
 				log.info("RA/Simple success ratio: " + (raSucc/simpleSucc));
+				log.info("RA-Simple success difference (paired): " + experiment.getDifference(config));
+				log.info("RA-Simple steps difference (paired): "
+						+ config.getPaired().getStepsDifference(Interval.Z_95));
+				log.info("Trials only RA / only Simple succeeded at: "
+						+ config.getPaired().getFirstOnly() + " / " + config.getPaired().getSecondOnly());
 				log.info("");
-
 			}
 		}
+
+		sink.close();
+		runner.shutdown();
 	}
 
 	/**
-	 * Get a random non-obstacle location on the map.
-	 * @param map the map to check
-	 * @return a valid location
+	 * Run a configuration in the UI and ask the user whether to use it.
+	 * @return whether to, or null to cancel the experiment
 	 */
-	protected static IntCoord getRandomLocation(ZombieMap map) {
-		int rand_x;
-		int rand_y;
-		do {
-			rand_x = (int)(Math.random() * (map.size(0) + 1));
-			rand_y = (int)(Math.random() * (map.size(1) + 1));
-		} while (map.typeOf(rand_x, rand_y) == CellType.OBSTACLE);
-		IntCoord start = new IntCoord(rand_x, rand_y);
-		return start;
+	private static Boolean confirmConfig(World world,
+			final IntCoord start, final IntCoord goal) throws IOException, InterruptedException, InvocationTargetException {
+		final ZombiePlanner planner = new RiskAverseZombiePlanner();
+		final ZombieSimulator sim = new ZombieSimulator(world, planner, new Random().nextLong());
+		final CountDownLatch done = new CountDownLatch(1);
+
+		final ZombieSimulatorUI ui = new ZombieSimulatorUI(sim) {
+			@Override
+			public void step() {
+				super.step();
+				if (sim.getState() != GameState.ACTIVE) {
+					done.countDown();
+				}
+			}
+		};
+
+		ui.getJFrame().setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		ui.getJFrame().addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				done.countDown();
+			}
+		});
+
+		// initialize the positions and the zombies
+		EventQueue.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				ui.mapClicked((int)start.get(0), (int)start.get(1), MouseEvent.BUTTON1, 1);
+				ui.mapClicked((int)goal.get(0), (int)goal.get(1), MouseEvent.BUTTON3, 1);
+				ui.actionPerformed(new ActionEvent(sim, 0, "Initialize Zombies"));
+			}
+		});
+
+		// wait until the user finishes the simulation
+		done.await();
+
+		// ask if they want to keep it
+		final AtomicReference<Boolean> keep = new AtomicReference<Boolean>(false);
+		EventQueue.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				int result = JOptionPane.showConfirmDialog(null,
+						"Use this configuration in simulations?",
+						"Keep Configuration",
+						JOptionPane.YES_NO_CANCEL_OPTION);
+				switch (result) {
+				case JOptionPane.YES_OPTION:
+					keep.set(true);
+					break;
+				case JOptionPane.CANCEL_OPTION:
+					keep.set(null);
+					break;
+				}
+			}
+		});
+
+		ui.closeFrame();
+		return keep.get();
 	}
 }
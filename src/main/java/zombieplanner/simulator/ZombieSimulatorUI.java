@@ -29,6 +29,8 @@ import javax.swing.Timer;
 import robotutils.data.GridMapUtils2;
 import robotutils.data.IntCoord;
 import robotutils.gui.MapPanel;
+import zombieplanner.planner.AnytimeZombiePlanner;
+import zombieplanner.planner.AsyncZombiePlanner;
 import zombieplanner.planner.RiskAverseZombiePlanner;
 import zombieplanner.planner.ZombiePlanner;
 import zombieplanner.simulator.ZombieMap.CellType;
@@ -51,6 +53,10 @@ public class ZombieSimulatorUI implements ActionListener {
 
 	public ZombieSimulatorUI(ZombieSimulator sim) throws IOException {
 		this.sim = sim;
+		// zombies are caught up to draw them every step; with their own
+		// streams that doesn't change what they do, so a seed plays out as it
+		// does headless with per-zombie streams (e.g. in paired experiments)
+		sim.setPerZombieStreams(true);
 		final ZombieMap map = sim.getMap();
 		final Rectangle2D mapBounds = new Rectangle2D.Double(0.0, 0.0, map.size(0), map.size(1));
 
@@ -202,6 +208,7 @@ public class ZombieSimulatorUI implements ActionListener {
 
 	public void step() {
 		sim.stepOnce();
+		sim.catchUpZombies();
 		AffineTransform xform = AffineTransform.getTranslateInstance(sim.human.get(0)+0.5, sim.human.get(1)+0.5);
 		mp.setShape("human", human, xform, Color.BLUE.darker(), humanStroke);
 		mp.setShape("humanView", humanView, xform, new Color(0,0,150,50));
@@ -220,9 +227,15 @@ public class ZombieSimulatorUI implements ActionListener {
 			}
 		}
 
-		List<IntCoord> plan = ((RiskAverseZombiePlanner)sim.planner).getPlan();
+		List<IntCoord> plan = null;
+		if (sim.planner instanceof AnytimeZombiePlanner)
+			plan = ((AnytimeZombiePlanner)sim.planner).getPlan();
+		else if (sim.planner instanceof RiskAverseZombiePlanner)
+			plan = ((RiskAverseZombiePlanner)sim.planner).getPlan();
+		else if (sim.planner instanceof AsyncZombiePlanner)
+			plan = ((AsyncZombiePlanner)sim.planner).getPlan();
 
-		if (plan != null) {
+		if (plan != null && !plan.isEmpty()) {
 			plan = plan.subList(1, plan.size());
 			int j;
 			for (j=0; j<plan.size(); j++) {
@@ -251,11 +264,32 @@ public class ZombieSimulatorUI implements ActionListener {
 		jf.dispatchEvent(new WindowEvent(jf, WindowEvent.WINDOW_CLOSING));
 	}
 
+	/**
+	 * Run the simulator interactively.
+	 * @param args optionally, {@code --async} to plan on a background thread
+	 *        (see {@link AsyncZombiePlanner}), so the human keeps moving while
+	 *        a slow replan finishes, and {@code --anytime} to bound the
+	 *        planning done each step (see {@link AnytimeZombiePlanner}), so a
+	 *        replan after a big cost change can't stall a frame
+	 */
 	public static void main(String[] args) throws IOException {
 
+		boolean async = false, anytime = false;
+		for (String arg : args) {
+			if (arg.equals("--async"))
+				async = true;
+			else if (arg.equals("--anytime"))
+				anytime = true;
+			else
+				throw new IllegalArgumentException("Unknown argument " + arg);
+		}
+
 		ZombieMap map = GTMapGenerator.loadGTMap();
 		ProbabilityMap probDist = GTMapGenerator.loadGTZombieProbabilities(0.1);
-		ZombiePlanner planner = new RiskAverseZombiePlanner();
+		RiskAverseZombiePlanner base = anytime
+				? new AnytimeZombiePlanner()
+				: new RiskAverseZombiePlanner();
+		ZombiePlanner planner = async ? new AsyncZombiePlanner(base) : base;
 //		ZombiePlanner planner = new SimpleZombiePlanner();
 		ZombieSimulator sim = new ZombieSimulator(map, probDist, planner);
 
@@ -0,0 +1,340 @@
+package zombieplanner.simulator.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import zombieplanner.ResourceLoader;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads grids of numbers from CSV files, one row of the grid per line, into
+ * arrays in linear cell order ({@code x + y*width}, the maps' backing array
+ * layout).
+ *
+ * Several files are read at once, one task each; each file is read whole,
+ * split into lines, and its rows parsed in parallel chunks straight into
+ * place, with a scanner that works on the raw bytes rather than splitting
+ * strings. A file with the wrong number of rows or columns, or anything that
+ * isn't a number, fails the whole read with an {@link IOException} saying
+ * where, and stops the other chunks and files as soon as they notice.
+ *
+ * @author Tim Vergenz
+ */
+public final class CSVGrid {
+
+	// rows to parse per task
+	private static final int CHUNK_ROWS = 16;
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	// powers of ten that doubles hold exactly
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i-1] * 10;
+	}
+
+	// largest mantissa that converts to a double exactly
+	private static final long MAX_EXACT = 1L << 53;
+
+	private CSVGrid() {
+	}
+
+	/**
+	 * Read resources, each a grid of the given size.
+	 * @return each resource's values, in linear cell order
+	 * @throws IOException if a resource is missing, isn't a grid of the given
+	 *         size, or holds something other than numbers
+	 */
+	public static double[][] readResources(String[] names, int width, int height) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			return readResources(names, width, height, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	static double[][] readResources(final String[] names, final int width, final int height,
+			ForkJoinPool pool) throws IOException {
+		final double[][] grids = new double[names.length][];
+		final Failure failure = new Failure();
+		try {
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute() {
+					RecursiveAction[] tasks = new RecursiveAction[names.length];
+					for (int k = 0; k < names.length; k++) {
+						final int layer = k;
+						tasks[k] = new RecursiveAction() {
+							private static final long serialVersionUID = 1L;
+							@Override
+							protected void compute() {
+								try {
+									byte[] data = readResource(names[layer]);
+									grids[layer] = new double[width * height];
+									parse(data, names[layer], width, height, grids[layer], failure);
+								} catch (IOException e) {
+									failure.set(e);
+								}
+							}
+						};
+					}
+					invokeAll(tasks);
+				}
+			});
+		} catch (RuntimeException e) {
+			failure.set(e);
+		}
+		failure.check();
+		return grids;
+	}
+
+	/**
+	 * Parse a grid from a CSV file's contents.
+	 * @param name the file's name, for errors
+	 * @return the values, in linear cell order
+	 */
+	static double[] parse(byte[] data, String name, int width, int height,
+			ForkJoinPool pool) throws IOException {
+		final double[] values = new double[width * height];
+		final Failure failure = new Failure();
+		final Rows rows = new Rows(data, name, width, height, values, failure);
+		rows.split();
+		failure.check();
+		try {
+			pool.invoke(new Chunk(rows, 0, height));
+		} catch (RuntimeException e) {
+			failure.set(e);
+		}
+		failure.check();
+		return values;
+	}
+
+	private static void parse(byte[] data, String name, int width, int height,
+			double[] values, Failure failure) {
+		Rows rows = new Rows(data, name, width, height, values, failure);
+		rows.split();
+		if (!failure.isSet())
+			new Chunk(rows, 0, height).invoke();
+	}
+
+	private static byte[] readResource(String name) throws IOException {
+		InputStream in = ResourceLoader.getInputStream(name);
+		if (in == null)
+			throw new IOException("No resource " + name);
+		try {
+			return ByteStreams.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The first error from any task, so the rest can give up early.
+	 */
+	private static class Failure {
+		private volatile Throwable error;
+
+		synchronized void set(Throwable e) {
+			if (error == null)
+				error = e;
+		}
+
+		boolean isSet() {
+			return error != null;
+		}
+
+		void check() throws IOException {
+			Throwable e = error;
+			if (e == null)
+				return;
+			if (e instanceof IOException)
+				throw (IOException)e;
+			if (e instanceof RuntimeException)
+				throw (RuntimeException)e;
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A file's contents split into the lines holding each row.
+	 */
+	private static class Rows {
+		final byte[] data;
+		final String name;
+		final int width, height;
+		final double[] values;
+		final Failure failure;
+		final int[] start, end;
+
+		Rows(byte[] data, String name, int width, int height, double[] values, Failure failure) {
+			this.data = data;
+			this.name = name;
+			this.width = width;
+			this.height = height;
+			this.values = values;
+			this.failure = failure;
+			this.start = new int[height];
+			this.end = new int[height];
+		}
+
+		/**
+		 * Find where each row's line starts and ends (not counting the line
+		 * break), checking there are exactly height of them.
+		 */
+		void split() {
+			int row = 0;
+			int pos = 0;
+			while (pos < data.length) {
+				int eol = pos;
+				while (eol < data.length && data[eol] != '\n')
+					eol++;
+				int stop = (eol > pos && data[eol-1] == '\r') ? eol - 1 : eol;
+				if (row == height) {
+					// allow blank lines at the end, nothing else
+					if (stop > pos) {
+						failure.set(new IOException(name + " has more than " + height + " rows"));
+						return;
+					}
+				}
+				else {
+					start[row] = pos;
+					end[row] = stop;
+					row++;
+				}
+				pos = eol + 1;
+			}
+			if (row < height)
+				failure.set(new IOException(name + " has " + row + " rows, not " + height));
+		}
+
+		void parseRow(int y) throws IOException {
+			int pos = start[y];
+			int stop = end[y];
+			int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				if (x > 0) {
+					if (pos == stop)
+						throw error(y, pos, "has " + x + " columns, not " + width);
+					pos++; // the comma
+				}
+				int from = pos;
+				while (pos < stop && data[pos] != ',')
+					pos++;
+				values[offset + x] = number(y, from, pos);
+			}
+			if (pos != stop)
+				throw error(y, pos, "has more than " + width + " columns");
+		}
+
+		/**
+		 * Parse the number in data[from, to): an optional sign, digits with
+		 * an optional decimal point, and an optional exponent. Converts to the
+		 * same double as {@link Double#parseDouble(String)}: directly when the
+		 * digits and power of ten are both exact doubles, otherwise by handing
+		 * the text to it.
+		 */
+		private double number(int y, int from, int to) throws IOException {
+			int pos = from;
+			boolean negative = false;
+			if (pos < to && (data[pos] == '-' || data[pos] == '+'))
+				negative = (data[pos++] == '-');
+			int unsigned = pos;
+			long mantissa = 0;
+			int digits = 0, significant = 0, scale = 0;
+			boolean point = false;
+			for (; pos < to; pos++) {
+				int c = data[pos];
+				if (c >= '0' && c <= '9') {
+					digits++;
+					if (significant > 0 || c != '0')
+						significant++;
+					if (significant <= 18)
+						mantissa = mantissa * 10 + (c - '0');
+					else if (!point)
+						scale++;
+					if (point && significant <= 18)
+						scale--;
+				}
+				else if (c == '.' && !point) {
+					point = true;
+				}
+				else {
+					break;
+				}
+			}
+			if (digits == 0)
+				throw error(y, from, "expected a number");
+			if (pos < to && (data[pos] == 'e' || data[pos] == 'E')) {
+				pos++;
+				boolean negativeExp = false;
+				if (pos < to && (data[pos] == '-' || data[pos] == '+'))
+					negativeExp = (data[pos++] == '-');
+				int exp = 0, expDigits = 0;
+				for (; pos < to && data[pos] >= '0' && data[pos] <= '9'; pos++) {
+					if (exp < 100000)
+						exp = exp * 10 + (data[pos] - '0');
+					expDigits++;
+				}
+				if (expDigits == 0)
+					throw error(y, from, "expected a number");
+				scale += negativeExp ? -exp : exp;
+			}
+			if (pos != to)
+				throw error(y, from, "expected a number");
+
+			double value;
+			if (mantissa == 0)
+				value = 0;
+			else if (significant <= 18 && mantissa <= MAX_EXACT && Math.abs(scale) < POW10.length)
+				value = (scale < 0) ? mantissa / POW10[-scale] : mantissa * POW10[scale];
+			else
+				value = Double.parseDouble(new String(data, unsigned, to - unsigned, ASCII));
+			return negative ? -value : value;
+		}
+
+		private IOException error(int y, int pos, String message) {
+			return new IOException(name + ":" + (y + 1) + ":" + (pos - start[y] + 1) + ": " + message);
+		}
+	}
+
+	/**
+	 * A range of rows, split until small enough to parse directly.
+	 */
+	private static class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Rows rows;
+		private final int from, to;
+
+		Chunk(Rows rows, int from, int to) {
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > CHUNK_ROWS) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Chunk(rows, from, mid), new Chunk(rows, mid, to));
+				return;
+			}
+			for (int y = from; y < to && !rows.failure.isSet(); y++) {
+				try {
+					rows.parseRow(y);
+				} catch (IOException e) {
+					rows.failure.set(e);
+				}
+			}
+		}
+	}
+
+}
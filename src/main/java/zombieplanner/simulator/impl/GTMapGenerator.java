@@ -1,18 +1,14 @@
 package zombieplanner.simulator.impl;
 
 import robotutils.data.GridMap;
-import zombieplanner.ResourceLoader;
 import zombieplanner.simulator.ProbabilityMap;
 import zombieplanner.simulator.StaticZombieMap;
 import zombieplanner.simulator.ZombieMap;
 import zombieplanner.simulator.ZombieMap.CellType;
 import zombieplanner.simulator.ZombieSimulator;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 
 /**
  * A class to generate {@link GridMap}s and {@link ProbabilityMap}s for
@@ -28,70 +24,152 @@ public final class GTMapGenerator {
 	public static final String CLEAR_MAP = "gt_clear_map.csv";
 	public static final String ZOMBIE_DENSITY_MAP = "zombie_density_map.csv";
 
+	/**
+	 * System property naming a {@link MapFile} to load the GT map and density
+	 * from instead of parsing the CSV files.
+	 */
+	public static final String MAP_FILE_PROPERTY = "zombieplanner.map";
+
 	private static ZombieMap gtMap;
 	private static ProbabilityMap probMap;
+	private static MapFile mapFile;
+	// the map and density as read from the CSV files
+	private static MapFile csvFile;
+
+	/**
+	 * Get the map file named by {@link #MAP_FILE_PROPERTY}, or null if there
+	 * is none.
+	 * @throws IllegalStateException if the file is named but can't be loaded
+	 */
+	private static synchronized MapFile getMapFile() {
+		String name = System.getProperty(MAP_FILE_PROPERTY);
+		if (mapFile == null && name != null) {
+			try {
+				mapFile = MapFile.load(new File(name));
+			} catch (IOException e) {
+				throw new IllegalStateException("Couldn't load the map file " + name, e);
+			}
+		}
+		return mapFile;
+	}
 
 	/**
 	 * Get a {@link GridMap} with data from the map of GT's campus.
 	 * @return a filled-in {@link GridMap}
+	 * @throws IllegalStateException if the map's files can't be read
 	 */
 	public static ZombieMap loadGTMap() {
 		if (gtMap == null) {
-			//gtMap = GridMapGenerator.createRandomMazeMap2D(WIDTH, HEIGHT);
-
-			gtMap = new StaticZombieMap(WIDTH, HEIGHT);
-
-			updateGTMap(gtMap, CellType.OBSTACLE, OBSTACLE_MAP);
-			updateGTMap(gtMap, CellType.BUILDING, BUILDING_MAP);
-			updateGTMap(gtMap, CellType.CLEAR, CLEAR_MAP);
+			MapFile file = getMapFile();
+			gtMap = (file != null) ? file.getMap() : getCSVFile().getMap();
 		}
 		return gtMap;
 	}
 
+	/**
+	 * Build the map of GT's campus from the CSV files, uncached.
+	 * @throws IOException if a layer can't be read, or the layers don't mark
+	 *         every cell as exactly one type
+	 */
+	public static ZombieMap loadGTMapFromCSV() throws IOException {
+		//gtMap = GridMapGenerator.createRandomMazeMap2D(WIDTH, HEIGHT);
+
+		double[][] layers = CSVGrid.readResources(
+				new String[] { OBSTACLE_MAP, BUILDING_MAP, CLEAR_MAP }, WIDTH, HEIGHT);
+		return toMap(layers[0], layers[1], layers[2]);
+	}
+
+	/**
+	 * @throws IllegalStateException if the density's file can't be read
+	 */
 	public static ProbabilityMap loadGTZombieProbabilities(double baseline) {
 		if (probMap == null) {
-			//probMap = getCentralizedProbabilityMap(WIDTH, HEIGHT);
+			MapFile file = getMapFile();
+			if (file == null)
+				file = getCSVFile();
+			probMap = new ProbabilityMap(file.getDensity().sizes());
+			double[] from = file.getDensity().getData(), to = probMap.getData();
+			for (int i=0; i<to.length; i++)
+				to[i] = from[i] + baseline;
+		}
+		return probMap;
+	}
 
-			probMap = new ProbabilityMap(WIDTH, HEIGHT);
+	/**
+	 * Read the zombie density of GT's campus from its CSV file, uncached.
+	 * @throws IOException if the file can't be read, or holds negative
+	 *         densities
+	 */
+	public static ProbabilityMap loadGTZombieProbabilitiesFromCSV(double baseline) throws IOException {
+		//probMap = getCentralizedProbabilityMap(WIDTH, HEIGHT);
 
-			InputStream is = null;
-			InputStreamReader isr = null;
-			BufferedReader br = null;
-			String line = "";
-			String delimiter = ",";
+		double[] density = CSVGrid.readResources(
+				new String[] { ZOMBIE_DENSITY_MAP }, WIDTH, HEIGHT)[0];
+		return toProbabilityMap(density, baseline);
+	}
 
+	/**
+	 * Read every CSV layer at once, for the cached map and density, the first
+	 * time either is needed.
+	 */
+	private static synchronized MapFile getCSVFile() {
+		if (csvFile == null) {
 			try {
-				is = ResourceLoader.getInputStream(ZOMBIE_DENSITY_MAP);
-				isr = new InputStreamReader(is);
-				br = new BufferedReader(isr);
-
-				int xInd = 0;
-				int yInd = 0;
-				while ((line = br.readLine()) != null) {
-					String[] rowEntries = line.split(delimiter);
-
-					xInd = 0;
-					for (String entry : rowEntries) {
-						probMap.set(Double.parseDouble(entry) + baseline, xInd, yInd);
-						xInd++;
-					}
-					yInd++;
-				}
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
+				double[][] layers = CSVGrid.readResources(new String[] {
+						OBSTACLE_MAP, BUILDING_MAP, CLEAR_MAP, ZOMBIE_DENSITY_MAP }, WIDTH, HEIGHT);
+				csvFile = new MapFile(toMap(layers[0], layers[1], layers[2]),
+						toProbabilityMap(layers[3], 0));
 			} catch (IOException e) {
-				e.printStackTrace();
-			} finally {
-				if (br != null) {
-					try {
-						br.close();
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
+				throw new IllegalStateException("Couldn't load the GT map", e);
+			}
+		}
+		return csvFile;
+	}
+
+	/**
+	 * Combine the obstacle, building and clear layers (1 where a cell is of
+	 * that type, 0 where not) into a map.
+	 * @throws IOException unless each cell is in exactly one layer
+	 */
+	private static ZombieMap toMap(double[] obstacles, double[] buildings, double[] clear) throws IOException {
+		StaticZombieMap map = new StaticZombieMap(WIDTH, HEIGHT);
+		byte[] cells = map.getData();
+		double[][] layers = { obstacles, buildings, clear };
+		String[] names = { OBSTACLE_MAP, BUILDING_MAP, CLEAR_MAP };
+		byte[] types = { CellType.OBSTACLE.getByteVal(), CellType.BUILDING.getByteVal(),
+				CellType.CLEAR.getByteVal() };
+		for (int i = 0; i < cells.length; i++) {
+			int type = -1;
+			for (int k = 0; k < layers.length; k++) {
+				double v = layers[k][i];
+				if (v == 1) {
+					if (type >= 0)
+						throw new IOException("Cell (" + (i % WIDTH) + ", " + (i / WIDTH)
+								+ ") is marked in both " + names[type] + " and " + names[k]);
+					type = k;
+				}
+				else if (v != 0) {
+					throw new IOException(names[k] + ": cell (" + (i % WIDTH) + ", " + (i / WIDTH)
+							+ ") is " + v + ", not 0 or 1");
 				}
 			}
+			if (type < 0)
+				throw new IOException("Cell (" + (i % WIDTH) + ", " + (i / WIDTH) + ") is in no layer");
+			cells[i] = types[type];
 		}
-		return probMap;
+		return map;
+	}
+
+	private static ProbabilityMap toProbabilityMap(double[] density, double baseline) throws IOException {
+		ProbabilityMap map = new ProbabilityMap(WIDTH, HEIGHT);
+		double[] values = map.getData();
+		for (int i = 0; i < values.length; i++) {
+			if (!(density[i] >= 0) || Double.isInfinite(density[i]))
+				throw new IOException(ZOMBIE_DENSITY_MAP + ": cell (" + (i % WIDTH) + ", " + (i / WIDTH)
+						+ ") has density " + density[i]);
+			values[i] = density[i] + baseline;
+		}
+		return map;
 	}
 
 	/**
@@ -144,52 +222,4 @@ public final class GTMapGenerator {
 
 		probMap.normalize();
 	}
-
-	/**
-	 * Update ZombieMap positions, indicated by file, to be of specified CellType
-	 * @param gtMap
-	 * @param layer
-	 * @param filename
-	 */
-	private static void updateGTMap(ZombieMap gtMap, CellType layer, String filename) {
-		InputStream is = null;
-		InputStreamReader isr = null;
-		BufferedReader br = null;
-		String line = "";
-		String delimiter = ",";
-
-		try {
-
-			is = ResourceLoader.getInputStream(filename);
-			isr = new InputStreamReader(is);
-			br = new BufferedReader(isr);
-
-			int xInd = 0;
-			int yInd = 0;
-			while ((line = br.readLine()) != null) {
-				String[] rowEntries = line.split(delimiter);
-
-				xInd = 0;
-				for (String entry : rowEntries) {
-					if (Integer.parseInt(entry) == 1) {
-						gtMap.set(layer, xInd, yInd);
-					}
-					xInd++;
-				}
-				yInd++;
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			if (br != null) {
-				try {
-					br.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
-		}
-	}
 }
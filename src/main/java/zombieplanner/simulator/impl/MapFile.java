@@ -0,0 +1,179 @@
+package zombieplanner.simulator.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.ZombieMap;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+/**
+ * A compact binary file holding a map and its zombie density, so they can be
+ * loaded without parsing text.
+ *
+ * The file is little-endian: a 32-byte header (magic, format, width, height,
+ * bytes per density value, then padding), the cell types as one
+ * {@link CellType#getByteVal() byte} per cell, padding to a multiple of 8
+ * bytes, then the density as one float or double per cell. Both layers are
+ * in linear cell order ({@code x + y*width}), the same as the maps' backing
+ * arrays, so loading memory-maps the file and copies each layer into its
+ * map's storage in one bulk transfer.
+ *
+ * Run {@link #main(String[])} to convert the GT map's CSV files.
+ *
+ * @author Tim Vergenz
+ */
+public final class MapFile {
+
+	private static final int MAGIC = 0x5a4d4150; // "ZMAP"
+	private static final int FORMAT = 1;
+	private static final int HEADER_SIZE = 32;
+
+	private final ZombieMap map;
+	private final ProbabilityMap density;
+
+	MapFile(ZombieMap map, ProbabilityMap density) {
+		this.map = map;
+		this.density = density;
+	}
+
+	public ZombieMap getMap() {
+		return map;
+	}
+
+	/**
+	 * Get the density as stored, i.e. not normalized or filtered.
+	 */
+	public ProbabilityMap getDensity() {
+		return density;
+	}
+
+	private static long densityOffset(int width, int height) {
+		return (HEADER_SIZE + (long)width * height + 7) & ~7L;
+	}
+
+	/**
+	 * Save a map and its density.
+	 * @param singlePrecision whether to store the density as floats rather
+	 *        than doubles, halving that layer's size
+	 */
+	public static void save(File file, ZombieMap map, ProbabilityMap density,
+			boolean singlePrecision) throws IOException {
+		int width = map.size(0), height = map.size(1);
+		if (map.dims() != 2 || density.dims() != 2
+				|| density.size(0) != width || density.size(1) != height)
+			throw new IllegalArgumentException("Map and density must be 2-D and the same size.");
+		int n = width * height;
+		int valueSize = singlePrecision ? 4 : 8;
+		long offset = densityOffset(width, height);
+		long size = offset + (long)n * valueSize;
+
+		// write to a temporary file first so readers never see half a map
+		File tmp = new File(file.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			raf.setLength(size);
+			MappedByteBuffer buf = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			buf.putInt(MAGIC).putInt(FORMAT).putInt(width).putInt(height).putInt(valueSize);
+			buf.position(HEADER_SIZE);
+			for (int y = 0; y < height; y++)
+				for (int x = 0; x < width; x++)
+					buf.put(map.get(x, y));
+			buf.position((int)offset);
+			double[] values = density.getData();
+			if (singlePrecision) {
+				for (int i = 0; i < n; i++)
+					buf.putFloat((float)values[i]);
+			}
+			else {
+				buf.asDoubleBuffer().put(values, 0, n);
+			}
+			buf.force();
+		} finally {
+			raf.close();
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file))
+				throw new IOException("Could not move " + tmp + " to " + file);
+		}
+	}
+
+	/**
+	 * Load a map and its density saved by
+	 * {@link #save(File, ZombieMap, ProbabilityMap, boolean)}.
+	 * @throws IOException if the file can't be read, isn't a map file, or
+	 *         holds cells of no known type
+	 */
+	public static MapFile load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE)
+				throw new IOException(file + " is not a map file.");
+			MappedByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, size);
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			if (buf.getInt() != MAGIC || buf.getInt() != FORMAT)
+				throw new IOException(file + " is not a map file.");
+			int width = buf.getInt(), height = buf.getInt(), valueSize = buf.getInt();
+			if (width <= 0 || height <= 0 || (valueSize != 4 && valueSize != 8))
+				throw new IOException(file + " has a bad header.");
+			long n = (long)width * height;
+			long offset = densityOffset(width, height);
+			if (size != offset + n * valueSize)
+				throw new IOException(file + " is " + size + " bytes, not the "
+						+ (offset + n * valueSize) + " its header says.");
+
+			StaticZombieMap map = new StaticZombieMap(width, height);
+			byte[] cells = map.getData();
+			buf.position(HEADER_SIZE);
+			buf.get(cells, 0, (int)n);
+			for (int i = 0; i < n; i++)
+				if (CellType.fromByteVal(cells[i]) == null)
+					throw new IOException(file + ": cell " + i + " has unknown type " + cells[i] + ".");
+
+			ProbabilityMap density = new ProbabilityMap(width, height);
+			double[] values = density.getData();
+			buf.position((int)offset);
+			ByteBuffer layer = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+			if (valueSize == 8) {
+				layer.asDoubleBuffer().get(values, 0, (int)n);
+			}
+			else {
+				float[] floats = new float[(int)n];
+				layer.asFloatBuffer().get(floats);
+				for (int i = 0; i < n; i++)
+					values[i] = floats[i];
+			}
+			return new MapFile(map, density);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Convert the GT map's CSV files to a map file.
+	 * @param args the file to write, and optionally {@code --float} to store
+	 *        the density in single precision
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: MapFile <output file> [--float]");
+			System.exit(1);
+		}
+		boolean singlePrecision = args.length > 1 && args[1].equals("--float");
+		ZombieMap map = GTMapGenerator.loadGTMapFromCSV();
+		ProbabilityMap density = GTMapGenerator.loadGTZombieProbabilitiesFromCSV(0);
+		save(new File(args[0]), map, density, singlePrecision);
+	}
+
+}
@@ -0,0 +1,59 @@
+package zombieplanner.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class AnytimeGridPlannerTest {
+
+	@Test
+	public void testConvergesWithinBound() {
+		int w = 60, h = 40;
+		Random rand = new Random(3);
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		ProbabilityMap probDist = new ProbabilityMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++) {
+				map.set(rand.nextDouble() < 0.2 ? CellType.OBSTACLE : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble() * 0.05, x, y);
+			}
+		map.set(CellType.CLEAR, 0, 0);
+		RiskCostField costs = new RiskCostField(map, probDist, 50);
+		int goal = costs.index(w-1, h-1);
+		map.set(CellType.CLEAR, w-1, h-1);
+		costs.update(w-1, h-1);
+		double optimal = new RiskDistanceField(costs, goal).get(0);
+
+		AnytimeGridPlanner planner = new AnytimeGridPlanner(costs, 0, goal, 3.0, 0.5);
+		boolean done = false;
+		for (int calls=0; !done; calls++) {
+			assertTrue(calls < 10000);
+			done = planner.improve(20, Long.MAX_VALUE);
+			double bound = planner.getSuboptimalityBound();
+			if (bound < Double.POSITIVE_INFINITY)
+				assertTrue(planner.getPathCost() <= bound * optimal + 1e-9);
+		}
+		if (optimal == Double.POSITIVE_INFINITY) {
+			assertEquals(-1, planner.nextStep(0));
+			return;
+		}
+		assertEquals(1.0, planner.getSuboptimalityBound(), 0);
+		assertEquals(optimal, planner.getPathCost(), 1e-9);
+
+		// walking down the g values follows a path of exactly that cost
+		double sum = 0;
+		for (int curr = 0; curr != goal; ) {
+			int next = planner.nextStep(curr);
+			sum += costs.edgeCost(curr, next);
+			curr = next;
+		}
+		assertEquals(optimal, sum, 1e-9);
+	}
+
+}
@@ -0,0 +1,131 @@
+package zombieplanner.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.World;
+import zombieplanner.simulator.Zombie;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+import com.google.common.collect.Sets;
+
+public class AnytimeZombiePlannerTest {
+
+	static final int W = 40, H = 30;
+	static final Set<Zombie> NONE = Collections.emptySet();
+
+	World world;
+	IntCoord start = new IntCoord(2, 2), goal = new IntCoord(W-3, H-3);
+
+	@Before public void setUp() {
+		Random rand = new Random(4);
+		StaticZombieMap map = new StaticZombieMap(W, H);
+		ProbabilityMap probDist = new ProbabilityMap(W, H);
+		for (int x=0; x<W; x++)
+			for (int y=0; y<H; y++) {
+				double r = rand.nextDouble();
+				map.set(r < 0.05 ? CellType.OBSTACLE : r < 0.15 ? CellType.BUILDING : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble(), x, y);
+			}
+		map.set(CellType.CLEAR, 2, 2);
+		map.set(CellType.CLEAR, W-3, H-3);
+		world = new World(map, probDist);
+	}
+
+	private AnytimeZombiePlanner planner(int expansionBudget) {
+		AnytimeZombiePlanner planner = new AnytimeZombiePlanner(10000000000L, expansionBudget);
+		planner.initialize(world);
+		planner.setGoal(goal);
+		return planner;
+	}
+
+	private static double extra(AnytimeZombiePlanner planner, RiskCostField costs, int i) {
+		return -costs.getAlpha()*Math.log(1.0 - planner.dynProbDist.getLinear(i));
+	}
+
+	/**
+	 * Check the planner's path from a cell is optimal for the costs with the
+	 * zombies' risk on top.
+	 */
+	private static void checkOptimal(AnytimeZombiePlanner planner, IntCoord from, IntCoord goal) {
+		RiskCostField costs = RiskCostField.of(planner.world, 10000);
+		GridDStarLite fresh = new GridDStarLite(costs, from, goal);
+		for (int i=0; i<W*H; i++)
+			fresh.setExtraCost(i, extra(planner, costs, i));
+		fresh.plan();
+
+		double sum = 0;
+		int prev = costs.index((int)from.get(0), (int)from.get(1));
+		for (IntCoord c : planner.getPlan()) {
+			int next = costs.index((int)c.get(0), (int)c.get(1));
+			sum += costs.edgeCost(prev, next) + extra(planner, costs, next);
+			prev = next;
+		}
+		assertEquals(costs.index((int)goal.get(0), (int)goal.get(1)), prev);
+		double optimal = fresh.getG(fresh.index(from));
+		assertEquals(optimal, sum, 1e-9 * optimal);
+	}
+
+	/**
+	 * Zombies on the cells a path is about to go through.
+	 */
+	private static Set<Zombie> zombiesOn(List<IntCoord> plan) {
+		Set<Zombie> zombies = Sets.newHashSet();
+		for (int k=2; k<plan.size() && k<12; k+=3)
+			zombies.add(new Zombie(plan.get(k), 1.0));
+		return zombies;
+	}
+
+	@Test
+	public void testZombiesChangeRoute() {
+		AnytimeZombiePlanner planner = planner(Integer.MAX_VALUE);
+		IntCoord at = start;
+		for (int k=0; k<3; k++)
+			at = planner.nextStep(at, NONE);
+		// the plan is from where the last step was planned
+		planner.nextStep(at, NONE);
+		assertEquals(1.0, planner.getSuboptimalityBound(), 0);
+		checkOptimal(planner, at, goal);
+
+		List<IntCoord> before = planner.getPlan();
+		Set<Zombie> zombies = zombiesOn(before);
+		planner.nextStep(at, zombies);
+		assertFalse(before.equals(planner.getPlan()));
+		checkOptimal(planner, at, goal);
+
+		// and back once they're gone
+		planner.nextStep(at, NONE);
+		checkOptimal(planner, at, goal);
+	}
+
+	@Test
+	public void testKeepsMovingWhileReplanning() {
+		AnytimeZombiePlanner planner = planner(20);
+		while (planner.getSuboptimalityBound() > 1.0)
+			planner.nextStep(start, NONE);
+		List<IntCoord> before = planner.getPlan();
+
+		// the restarted search has nowhere near the budget to get back to us
+		Set<Zombie> zombies = zombiesOn(before);
+		assertEquals(before.get(0), planner.nextStep(start, zombies));
+		assertTrue(planner.getSuboptimalityBound() > 1.0);
+
+		int calls = 0;
+		while (planner.getSuboptimalityBound() > 1.0) {
+			assertTrue(calls++ < 100000);
+			planner.nextStep(start, zombies);
+		}
+		checkOptimal(planner, start, goal);
+	}
+
+}
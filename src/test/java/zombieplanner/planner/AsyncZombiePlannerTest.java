@@ -0,0 +1,193 @@
+package zombieplanner.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.Action;
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.World;
+import zombieplanner.simulator.Zombie;
+import zombieplanner.simulator.ZombieMap.CellType;
+import zombieplanner.simulator.ZombieSimulator.MoveAction;
+
+public class AsyncZombiePlannerTest {
+
+	static final int W = 30, H = 20;
+	static final Set<Zombie> NONE = Collections.emptySet();
+
+	World world;
+	IntCoord start = new IntCoord(0, 0), goal = new IntCoord(W-1, H-1);
+
+	/**
+	 * Takes as long as it's told to for each step.
+	 */
+	static class SlowPlanner extends RiskAverseZombiePlanner {
+		volatile long delay = 0;
+		final AtomicInteger finished = new AtomicInteger();
+
+		@Override
+		protected IntCoord nextStep(IntCoord from, Set<Zombie> visibleZombies) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			IntCoord next = super.nextStep(from, visibleZombies);
+			finished.incrementAndGet();
+			return next;
+		}
+	}
+
+	@Before public void setUp() {
+		Random rand = new Random(7);
+		StaticZombieMap map = new StaticZombieMap(W, H);
+		ProbabilityMap probDist = new ProbabilityMap(W, H);
+		for (int x=0; x<W; x++)
+			for (int y=0; y<H; y++) {
+				map.set(rand.nextDouble() < 0.1 ? CellType.BUILDING : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble(), x, y);
+			}
+		map.set(CellType.CLEAR, 0, 0);
+		map.set(CellType.CLEAR, W-1, H-1);
+		// walled in, so it can't be reached
+		map.set(CellType.OBSTACLE, 14, 9);
+		map.set(CellType.OBSTACLE, 16, 9);
+		map.set(CellType.OBSTACLE, 15, 8);
+		map.set(CellType.OBSTACLE, 15, 10);
+		map.set(CellType.CLEAR, 15, 9);
+		world = new World(map, probDist);
+	}
+
+	private AsyncZombiePlanner planner(SlowPlanner delegate, long deadline, IntCoord goal) {
+		AsyncZombiePlanner planner = new AsyncZombiePlanner(delegate, deadline);
+		planner.initialize(world);
+		planner.setGoal(goal);
+		return planner;
+	}
+
+	private static IntCoord step(IntCoord from, Action action) {
+		int x = (int)from.get(0), y = (int)from.get(1);
+		if (action == MoveAction.LEFT) x--;
+		else if (action == MoveAction.RIGHT) x++;
+		else if (action == MoveAction.UP) y--;
+		else if (action == MoveAction.DOWN) y++;
+		return new IntCoord(x, y);
+	}
+
+	@Test
+	public void testHonoursDeadline() {
+		SlowPlanner delegate = new SlowPlanner();
+		delegate.delay = 1000;
+		AsyncZombiePlanner planner = planner(delegate, 50000000L, goal);
+		try {
+			long startTime = System.nanoTime();
+			Action action = planner.getAction(start, NONE);
+			long elapsed = System.nanoTime() - startTime;
+			// no plan yet, so it waits in place rather than for the planner
+			assertEquals(MoveAction.NONE, action);
+			assertTrue("took " + elapsed + "ns", elapsed < 500000000L);
+		} finally {
+			planner.shutdown();
+		}
+	}
+
+	@Test
+	public void testFollowsStalePlanUntilReplaced() throws InterruptedException {
+		SlowPlanner delegate = new SlowPlanner();
+		AsyncZombiePlanner planner = planner(delegate, 2000000000L, goal);
+		try {
+			Action first = planner.getAction(start, NONE);
+			List<IntCoord> plan = planner.getPlan();
+			IntCoord at = step(start, first);
+			assertEquals(plan.get(0), at);
+
+			// keeps to the old plan while the slow replan runs
+			delegate.delay = 1000;
+			Action second = planner.getAction(at, NONE);
+			assertEquals(plan.get(1), step(at, second));
+
+			// until the new plan from there is done
+			RiskAverseZombiePlanner reference = new RiskAverseZombiePlanner();
+			reference.initialize(world);
+			reference.setGoal(goal);
+			reference.nextStep(at, NONE);
+			List<IntCoord> expected = reference.getPlan();
+			long end = System.nanoTime() + 5000000000L;
+			while (!expected.equals(planner.getPlan()) && System.nanoTime() < end)
+				Thread.sleep(10);
+			assertEquals(expected, planner.getPlan());
+		} finally {
+			planner.shutdown();
+		}
+	}
+
+	@Test
+	public void testDoesntWaitWithPlanToFollow() {
+		SlowPlanner delegate = new SlowPlanner();
+		AsyncZombiePlanner planner = planner(delegate, 2000000000L, goal);
+		try {
+			// nothing to follow yet, so this one waits
+			IntCoord at = step(start, planner.getAction(start, NONE));
+			List<IntCoord> plan = planner.getPlan();
+			assertEquals(1, delegate.finished.get());
+
+			delegate.delay = 1000;
+			long startTime = System.nanoTime();
+			Action action = planner.getAction(at, NONE);
+			long elapsed = System.nanoTime() - startTime;
+			assertEquals(plan.get(1), step(at, action));
+			assertEquals(1, delegate.finished.get());
+			assertTrue("took " + elapsed + "ns", elapsed < 500000000L);
+		} finally {
+			planner.shutdown();
+		}
+	}
+
+	@Test
+	public void testUnreachableGoal() {
+		AsyncZombiePlanner planner = planner(new SlowPlanner(), 2000000000L, new IntCoord(15, 9));
+		try {
+			assertNull(planner.getAction(start, NONE));
+			assertNull(planner.getPlan());
+		} finally {
+			planner.shutdown();
+		}
+	}
+
+	@Test
+	public void testWorkerStops() throws InterruptedException {
+		AsyncZombiePlanner planner = planner(new SlowPlanner(), 2000000000L, goal);
+		assertNull(planner.getWorker());
+
+		// by itself once idle
+		planner.getAction(start, NONE);
+		Thread worker = planner.getWorker();
+		assertTrue(worker.isAlive());
+		worker.join(5 * AsyncZombiePlanner.IDLE_TIMEOUT / 1000000);
+		assertFalse(worker.isAlive());
+		assertNull(planner.getWorker());
+
+		// and for good once shut down
+		assertNotNull(planner.getAction(start, NONE));
+		worker = planner.getWorker();
+		planner.shutdown();
+		worker.join(5000);
+		assertFalse(worker.isAlive());
+		try {
+			planner.getAction(start, NONE);
+			fail("used after shutdown");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+}
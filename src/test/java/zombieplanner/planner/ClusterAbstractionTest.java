@@ -0,0 +1,79 @@
+package zombieplanner.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class ClusterAbstractionTest {
+
+	static final int W = 45, H = 37;
+
+	StaticZombieMap map;
+	ProbabilityMap probDist;
+	RiskCostField costs;
+	Random rand;
+
+	@Before public void setUp() {
+		rand = new Random(7);
+		map = new StaticZombieMap(W, H);
+		probDist = new ProbabilityMap(W, H);
+		for (int x=0; x<W; x++)
+			for (int y=0; y<H; y++) {
+				map.set(rand.nextDouble() < 0.25 ? CellType.OBSTACLE : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble() * 0.01, x, y);
+			}
+		costs = new RiskCostField(map, probDist, 100);
+	}
+
+	void checkRoute(ClusterAbstraction abs, int start, int goal) {
+		int[] route = abs.plan(start, goal);
+		RiskDistanceField exact = new RiskDistanceField(costs, goal);
+		if (exact.get(start) == Double.POSITIVE_INFINITY) {
+			assertNull(route);
+			return;
+		}
+		assertNotNull(route);
+		assertEquals(start, route[0]);
+		assertEquals(goal, route[route.length-1]);
+		double sum = 0;
+		for (int k=1; k<route.length; k++) {
+			int a = route[k-1], b = route[k];
+			assertEquals(1, Math.abs(costs.x(a) - costs.x(b)) + Math.abs(costs.y(a) - costs.y(b)));
+			sum += costs.edgeCost(a, b);
+		}
+		assertTrue(sum < Double.POSITIVE_INFINITY);
+		assertTrue(sum >= exact.get(start) - 1e-9);
+	}
+
+	@Test
+	public void testRoutesAreValid() {
+		ClusterAbstraction abs = new ClusterAbstraction(costs, 8);
+		for (int k=0; k<50; k++)
+			checkRoute(abs, rand.nextInt(W*H), rand.nextInt(W*H));
+	}
+
+	@Test
+	public void testStaysInSyncWithCostChanges() {
+		ClusterAbstraction abs = new ClusterAbstraction(costs, 8);
+		costs.addListener(abs);
+		for (int round=0; round<10; round++) {
+			int version = abs.getVersion();
+			for (int k=0; k<10; k++) {
+				int x = rand.nextInt(W), y = rand.nextInt(H);
+				map.set(rand.nextBoolean() ? CellType.OBSTACLE : CellType.CLEAR, x, y);
+				costs.update(x, y);
+			}
+			assertTrue(abs.getVersion() != version);
+			for (int k=0; k<10; k++)
+				checkRoute(abs, rand.nextInt(W*H), rand.nextInt(W*H));
+		}
+	}
+
+}
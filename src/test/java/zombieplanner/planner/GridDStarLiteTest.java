@@ -0,0 +1,198 @@
+package zombieplanner.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.World;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class GridDStarLiteTest {
+
+	static final int W = 30, H = 20;
+
+	StaticZombieMap map;
+	ProbabilityMap probDist;
+	Random rand;
+
+	@Before public void setUp() {
+		rand = new Random(42);
+		map = new StaticZombieMap(W, H);
+		probDist = new ProbabilityMap(W, H);
+		for (int x=0; x<W; x++)
+			for (int y=0; y<H; y++) {
+				map.set(rand.nextDouble() < 0.2 ? CellType.OBSTACLE : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble() * 0.01, x, y);
+			}
+		map.set(CellType.CLEAR, 0, 0);
+		map.set(CellType.CLEAR, W-1, H-1);
+	}
+
+	/**
+	 * Plain O(n^2) Dijkstra towards the goal, for reference.
+	 */
+	static double[] costsToGoal(RiskCostField costs, int goal) {
+		int n = costs.length();
+		double[] d = new double[n];
+		boolean[] done = new boolean[n];
+		java.util.Arrays.fill(d, Double.POSITIVE_INFINITY);
+		d[goal] = 0;
+		for (int k=0; k<n; k++) {
+			int u = -1;
+			for (int i=0; i<n; i++)
+				if (!done[i] && (u < 0 || d[i] < d[u]))
+					u = i;
+			if (d[u] == Double.POSITIVE_INFINITY)
+				break;
+			done[u] = true;
+			int x = costs.x(u), y = costs.y(u);
+			int[][] nbrs = {{x-1,y},{x+1,y},{x,y-1},{x,y+1}};
+			for (int[] nb : nbrs) {
+				if (!costs.contains(nb[0], nb[1]))
+					continue;
+				int s = costs.index(nb[0], nb[1]);
+				double v = costs.edgeCost(s, u) + d[u];
+				if (v < d[s])
+					d[s] = v;
+			}
+		}
+		return d;
+	}
+
+	static double pathCost(RiskCostField costs, List<IntCoord> path) {
+		double sum = 0;
+		for (int i=1; i<path.size(); i++) {
+			IntCoord a = path.get(i-1), b = path.get(i);
+			sum += costs.edgeCost(
+					costs.index((int)a.get(0), (int)a.get(1)),
+					costs.index((int)b.get(0), (int)b.get(1)));
+		}
+		return sum;
+	}
+
+	@Test
+	public void testMatchesDijkstra() {
+		RiskCostField costs = new RiskCostField(map, probDist, 100);
+		IntCoord start = new IntCoord(0, 0), goal = new IntCoord(W-1, H-1);
+		GridDStarLite planner = new GridDStarLite(costs, start, goal);
+
+		double[] d = costsToGoal(costs, costs.index(W-1, H-1));
+		List<IntCoord> path = planner.plan();
+		if (d[0] == Double.POSITIVE_INFINITY) {
+			assertTrue(path.isEmpty());
+			return;
+		}
+		assertEquals(start, path.get(0));
+		assertEquals(goal, path.get(path.size()-1));
+		assertEquals(d[0], pathCost(costs, path), 1e-9);
+	}
+
+	@Test
+	public void testIncrementalRepair() {
+		RiskCostField costs = new RiskCostField(map, probDist, 100);
+		IntCoord start = new IntCoord(0, 0), goal = new IntCoord(W-1, H-1);
+		GridDStarLite planner = new GridDStarLite(costs, start, goal);
+		planner.plan();
+		checkRepair(costs, planner, start);
+	}
+
+	@Test
+	public void testRepairWithStaleLandmarks() {
+		for (int trial=0; trial<10; trial++) {
+			setUp();
+			rand = new Random(trial);
+			RiskCostField costs = new RiskCostField(map, probDist, 100);
+			LandmarkHeuristic landmarks = new LandmarkHeuristic(costs, 4);
+			IntCoord start = new IntCoord(0, 0), goal = new IntCoord(W-1, H-1);
+			GridDStarLite planner = new GridDStarLite(costs, start, goal, landmarks);
+			planner.plan();
+			checkRepair(costs, planner, start);
+			assertTrue(landmarks.isStale());
+		}
+	}
+
+	@Test
+	public void testSeededFromDistanceField() {
+		World world = new World(map, probDist);
+		assertSame(RiskCostField.of(world, 100), RiskCostField.of(world, 100));
+		// one that follows the changes checkRepair makes to the test maps
+		RiskCostField costs = new RiskCostField(map, probDist, 100);
+		IntCoord start = new IntCoord(0, 0), goal = new IntCoord(W-1, H-1);
+		RiskDistanceField distances = RiskDistanceField.of(world, costs, goal);
+		assertSame(distances, RiskDistanceField.of(world, costs, goal));
+
+		double[] d = costsToGoal(costs, costs.index(W-1, H-1));
+		for (int i=0; i<d.length; i++)
+			assertEquals(d[i], distances.get(i), 1e-9);
+
+		checkRepair(costs, new GridDStarLite(distances, start), start);
+		assertTrue(distances.isStale());
+		assertFalse(RiskDistanceField.of(world, costs, goal).isStale());
+	}
+
+	@Test
+	public void testBoundedRepair() {
+		RiskCostField costs = new RiskCostField(map, probDist, 100);
+		IntCoord start = new IntCoord(0, 0), goal = new IntCoord(W-1, H-1);
+		GridDStarLite planner = new GridDStarLite(costs, start, goal);
+		GridDStarLite fresh = new GridDStarLite(costs, start, goal);
+		List<IntCoord> path = planner.plan();
+		assertTrue(path.size() > 2);
+
+		// make the middle of the path expensive
+		for (int k=1; k<path.size()-1; k++) {
+			int i = costs.index((int)path.get(k).get(0), (int)path.get(k).get(1));
+			planner.setExtraCost(i, 1000);
+			fresh.setExtraCost(i, 1000);
+		}
+		int s = costs.index(0, 0);
+		int calls = 0;
+		while (!planner.computeShortestPath(0)) {
+			// every step on the way is a move to a neighbor
+			int next = planner.nextStep(10);
+			assertEquals(1, Math.abs(costs.x(next) - costs.x(s)) + Math.abs(costs.y(next) - costs.y(s)));
+			calls++;
+		}
+		assertTrue(calls > 1);
+		assertEquals(fresh.nextStep(), planner.nextStep(0));
+		assertEquals(fresh.getG(s), planner.getG(s), 1e-9);
+	}
+
+	void checkRepair(RiskCostField costs, GridDStarLite planner, IntCoord start) {
+		for (int round=0; round<20; round++) {
+			// change some cells, then move the start along the current plan
+			for (int k=0; k<5; k++) {
+				int x = rand.nextInt(W), y = rand.nextInt(H);
+				if (x == W-1 && y == H-1)
+					continue;
+				map.set(rand.nextBoolean() ? CellType.OBSTACLE : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble() * 0.05, x, y);
+				if (costs.update(x, y))
+					planner.flagChange(x, y);
+			}
+			map.set(CellType.CLEAR, (int)start.get(0), (int)start.get(1));
+			if (costs.update((int)start.get(0), (int)start.get(1)))
+				planner.flagChange((int)start.get(0), (int)start.get(1));
+
+			planner.updateStart(start);
+			List<IntCoord> path = planner.plan();
+			double[] d = costsToGoal(costs, costs.index(W-1, H-1));
+			double expected = d[costs.index((int)start.get(0), (int)start.get(1))];
+			if (expected == Double.POSITIVE_INFINITY) {
+				assertTrue(path.isEmpty());
+				continue;
+			}
+			assertEquals("round " + round, expected, pathCost(costs, path), 1e-9);
+			if (path.size() > 1)
+				start = path.get(1);
+		}
+	}
+
+}
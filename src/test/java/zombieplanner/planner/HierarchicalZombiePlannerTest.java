@@ -0,0 +1,174 @@
+package zombieplanner.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.World;
+import zombieplanner.simulator.Zombie;
+import zombieplanner.simulator.ZombieMap;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+import com.google.common.collect.Lists;
+
+public class HierarchicalZombiePlannerTest {
+
+	static final int W = 80, H = 56;
+	static final Set<Zombie> NONE = Collections.emptySet();
+
+	/**
+	 * How much worse than optimal a route through the abstraction may be.
+	 */
+	static final double MAX_RATIO = 1.25;
+
+	World world;
+	RiskCostField costs;
+	Random rand;
+
+	@Before public void setUp() {
+		rand = new Random(11);
+		StaticZombieMap map = new StaticZombieMap(W, H);
+		ProbabilityMap probDist = new ProbabilityMap(W, H);
+		for (int x=0; x<W; x++)
+			for (int y=0; y<H; y++) {
+				double r = rand.nextDouble();
+				map.set(r < 0.1 ? CellType.OBSTACLE : r < 0.2 ? CellType.BUILDING : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble(), x, y);
+			}
+		world = new World(map, probDist);
+		costs = RiskCostField.of(world, 10000);
+	}
+
+	private IntCoord randomClearCell() {
+		while (true) {
+			IntCoord c = new IntCoord(rand.nextInt(W), rand.nextInt(H));
+			if (costs.cost((int)c.get(0), (int)c.get(1)) < Double.POSITIVE_INFINITY)
+				return c;
+		}
+	}
+
+	private HierarchicalZombiePlanner planner(IntCoord goal) {
+		HierarchicalZombiePlanner planner = new HierarchicalZombiePlanner();
+		planner.initialize(world);
+		planner.setGoal(goal);
+		return planner;
+	}
+
+	private int index(IntCoord c) {
+		return costs.index((int)c.get(0), (int)c.get(1));
+	}
+
+	/**
+	 * Check a route is a walk between neighboring walkable cells from start
+	 * to goal, and return its cost.
+	 */
+	private double checkRoute(List<IntCoord> route, IntCoord start, IntCoord goal) {
+		assertEquals(start, route.get(0));
+		assertEquals(goal, route.get(route.size()-1));
+		double sum = 0;
+		for (int k=1; k<route.size(); k++) {
+			int a = index(route.get(k-1)), b = index(route.get(k));
+			assertEquals(1, Math.abs(costs.x(a) - costs.x(b)) + Math.abs(costs.y(a) - costs.y(b)));
+			sum += costs.edgeCost(a, b);
+		}
+		assertTrue(sum < Double.POSITIVE_INFINITY);
+		return sum;
+	}
+
+	/**
+	 * Take a step and get the whole route from where it was taken.
+	 */
+	private static List<IntCoord> step(HierarchicalZombiePlanner planner, IntCoord from) {
+		IntCoord next = planner.nextStep(from, NONE);
+		if (next == null)
+			return null;
+		List<IntCoord> route = Lists.newArrayList(from);
+		route.addAll(planner.getPlan());
+		assertEquals(next, route.get(1));
+		return route;
+	}
+
+	/**
+	 * Cost of the optimal route, by a full search over the same costs.
+	 */
+	private double optimal(IntCoord start, IntCoord goal) {
+		List<IntCoord> route = new GridDStarLite(costs, start, goal).plan();
+		return route.isEmpty() ? Double.POSITIVE_INFINITY : checkRoute(route, start, goal);
+	}
+
+	@Test
+	public void testRoutesNearOptimal() {
+		for (int k=0; k<60; k++) {
+			IntCoord start = randomClearCell(), goal = randomClearCell();
+			if (start.equals(goal))
+				continue;
+			List<IntCoord> route = step(planner(goal), start);
+			double optimal = optimal(start, goal);
+			if (optimal == Double.POSITIVE_INFINITY) {
+				assertNull(route);
+				continue;
+			}
+			assertNotNull(route);
+			double cost = checkRoute(route, start, goal);
+			assertTrue(cost >= optimal - 1e-9);
+			assertTrue(cost + " vs " + optimal, cost <= MAX_RATIO * optimal);
+		}
+	}
+
+	@Test
+	public void testReplansThroughChangedCluster() {
+		ClusterAbstraction abstraction = ClusterAbstraction.of(world, costs, HierarchicalZombiePlanner.CLUSTER_SIZE);
+		int size = abstraction.getClusterSize();
+		IntCoord start = new IntCoord(2, 2), goal = new IntCoord(W-3, H-3);
+		ZombieMap map = costs.getMap();
+		map.set(CellType.CLEAR, 2, 2);
+		map.set(CellType.CLEAR, W-3, H-3);
+		costs.update(2, 2);
+		costs.update(W-3, H-3);
+
+		HierarchicalZombiePlanner planner = planner(goal);
+		List<IntCoord> route = step(planner, start);
+		checkRoute(route, start, goal);
+		IntCoord at = route.get(1);
+
+		// a cell further along the route, inside a cluster rather than on
+		// its border, so only that cluster is rebuilt
+		IntCoord blocked = null;
+		for (int k=route.size()/2; k<route.size()-1 && blocked == null; k++) {
+			int x = (int)route.get(k).get(0), y = (int)route.get(k).get(1);
+			if (x % size != 0 && x % size != size-1 && y % size != 0 && y % size != size-1)
+				blocked = route.get(k);
+		}
+		assertNotNull(blocked);
+		int x = (int)blocked.get(0), y = (int)blocked.get(1);
+
+		// the world's map stands in for one that changes under the planner
+		int version = abstraction.getVersion();
+		CellType before = map.typeOf(x, y);
+		map.set(CellType.OBSTACLE, x, y);
+		assertTrue(costs.update(x, y));
+		List<IntCoord> detour = step(planner, at);
+		assertEquals(version + 1, abstraction.getVersion());
+		assertFalse(detour.contains(blocked));
+		assertTrue(checkRoute(detour, at, goal) <= MAX_RATIO * optimal(at, goal));
+
+		// and back through it once it's open again
+		map.set(before, x, y);
+		assertTrue(costs.update(x, y));
+		IntCoord next = detour.get(1);
+		List<IntCoord> reopened = step(planner, next);
+		assertEquals(version + 2, abstraction.getVersion());
+		checkRoute(reopened, next, goal);
+		assertTrue(reopened.contains(blocked));
+	}
+
+}
@@ -0,0 +1,96 @@
+package zombieplanner.planner;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class LandmarkHeuristicTest {
+
+	private static RiskCostField randomCosts(int w, int h, long seed) {
+		Random rand = new Random(seed);
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		ProbabilityMap probDist = new ProbabilityMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++) {
+				map.set(rand.nextDouble() < 0.2 ? CellType.OBSTACLE : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble() * 0.05, x, y);
+			}
+		return new RiskCostField(map, probDist, 10000);
+	}
+
+	@Test
+	public void testAdmissible() {
+		RiskCostField costs = randomCosts(30, 20, 5);
+		LandmarkHeuristic lh = new LandmarkHeuristic(costs, 4);
+		int n = costs.length();
+		for (int b=0; b<n; b+=7) {
+			RiskDistanceField exact = new RiskDistanceField(costs, b);
+			for (int a=0; a<n; a++) {
+				double d = exact.get(a);
+				double h = lh.h(a, b);
+				if (d == Double.POSITIVE_INFINITY)
+					continue;
+				assertTrue(h <= d + 1e-6 * d);
+			}
+		}
+	}
+
+	@Test
+	public void testPlannerStaysOptimal() {
+		int w = 30, h = 20;
+		RiskCostField costs = randomCosts(w, h, 8);
+		LandmarkHeuristic lh = new LandmarkHeuristic(costs, 4);
+		int goal = costs.index(w-1, h-1);
+		double[] exact = new RiskDistanceField(costs, goal).copyDistances();
+		for (int start=0; start<costs.length(); start+=13) {
+			if (costs.cost(start) == Double.POSITIVE_INFINITY || exact[start] == Double.POSITIVE_INFINITY)
+				continue;
+			GridDStarLite planner = new GridDStarLite(costs,
+					new IntCoord(start % w, start / w), new IntCoord(w-1, h-1), lh);
+			planner.computeShortestPath();
+			double sum = 0;
+			for (int curr = start; curr != goal; ) {
+				int next = planner.nextStep();
+				assertTrue(next >= 0);
+				sum += costs.edgeCost(curr, next);
+				planner.updateStart(next);
+				curr = next;
+			}
+			assertEquals(exact[start], sum, 1e-6 * exact[start]);
+		}
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		RiskCostField costs = randomCosts(20, 10, 1);
+		LandmarkHeuristic lh = new LandmarkHeuristic(costs, 3);
+		File file = File.createTempFile("landmarks", ".bin");
+		try {
+			lh.save(file);
+			LandmarkHeuristic loaded = LandmarkHeuristic.load(costs, file);
+			assertArrayEquals(lh.getLandmarks(), loaded.getLandmarks());
+			for (int a=0; a<costs.length(); a+=3)
+				for (int b=0; b<costs.length(); b+=5)
+					assertEquals(lh.h(a, b), loaded.h(a, b), 0);
+
+			try {
+				LandmarkHeuristic.load(randomCosts(20, 10, 2), file);
+				fail("loaded tables for a different cost field");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+}
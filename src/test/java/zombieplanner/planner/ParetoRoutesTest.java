@@ -0,0 +1,57 @@
+package zombieplanner.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class ParetoRoutesTest {
+
+	@Test
+	public void testMatchesSingleAlphaSearches() {
+		int w = 40, h = 30;
+		Random rand = new Random(11);
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		ProbabilityMap probDist = new ProbabilityMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++) {
+				map.set(rand.nextDouble() < 0.2 ? CellType.OBSTACLE : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble() < 0.3 ? rand.nextDouble() * 0.1 : 0, x, y);
+			}
+		map.set(CellType.CLEAR, 0, 0);
+		map.set(CellType.CLEAR, w-1, h-1);
+
+		ParetoRoutes routes = ParetoRoutes.search(map, probDist,
+				new IntCoord(0, 0), new IntCoord(w-1, h-1));
+		for (int k=1; k<routes.size(); k++) {
+			assertTrue(routes.getLength(k) > routes.getLength(k-1));
+			assertTrue(routes.getRisk(k) < routes.getRisk(k-1));
+		}
+
+		for (double alpha : new double[] { 0, 0.5, 5, 50, 10000 }) {
+			RiskCostField costs = new RiskCostField(map, probDist, alpha);
+			double optimal = new RiskDistanceField(costs, costs.index(w-1, h-1)).get(0);
+			int k = routes.best(alpha);
+			if (optimal == Double.POSITIVE_INFINITY) {
+				assertEquals(-1, k);
+				continue;
+			}
+			assertEquals(optimal, routes.getCost(k, alpha), 1e-6 * optimal);
+
+			// the route itself has the advertised cost
+			int[] path = routes.getIndexPath(k);
+			assertEquals(routes.getLength(k) + 1, path.length);
+			double sum = 0;
+			for (int j=1; j<path.length; j++)
+				sum += costs.edgeCost(path[j-1], path[j]);
+			assertEquals(optimal, sum, 1e-6 * optimal);
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package zombieplanner.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.StaticZombieMap;
+import zombieplanner.simulator.World;
+import zombieplanner.simulator.Zombie;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+import com.google.common.collect.Sets;
+
+public class RiskAverseZombiePlannerTest {
+
+	static final int W = 40, H = 30;
+
+	/**
+	 * Check the planner's repaired search against a fresh one over the same
+	 * costs, with extra costs worked out here from the zombies. The step only
+	 * does part of a big repair, so the rest is finished here first.
+	 */
+	private static void checkOverlay(RiskAverseZombiePlanner planner, IntCoord from,
+			IntCoord goal, Set<Zombie> zombies) {
+		IntCoord step = planner.nextStep(from, zombies);
+		assertEquals(1, Math.abs(step.get(0) - from.get(0)) + Math.abs(step.get(1) - from.get(1)), 0);
+		GridDStarLite repaired = planner.planner;
+		RiskCostField costs = repaired.getCosts();
+		int next = repaired.nextStep();
+
+		double[] p = new double[W*H];
+		for (Zombie zombie : zombies) {
+			int zx = (int)zombie.getPosition().get(0), zy = (int)zombie.getPosition().get(1);
+			for (int x=0; x<W; x++)
+				for (int y=0; y<H; y++) {
+					int d = Math.abs(x - zx) + Math.abs(y - zy);
+					if (d <= RiskAverseZombiePlanner.ZOMBIE_RISK_RADIUS) {
+						double q = RiskAverseZombiePlanner.ZOMBIE_RISK
+								* (1.0 - (double)d/(RiskAverseZombiePlanner.ZOMBIE_RISK_RADIUS + 1));
+						p[x + y*W] = 1.0 - (1.0 - p[x + y*W])*(1.0 - q);
+					}
+				}
+		}
+		GridDStarLite fresh = new GridDStarLite(costs, from, goal);
+		for (int i=0; i<W*H; i++) {
+			double extra = -costs.getAlpha()*Math.log(1.0 - p[i]);
+			assertEquals(extra, repaired.getExtraCost(i), 1e-9 * (1 + extra));
+			assertEquals(p[i], planner.dynProbDist.getLinear(i), 1e-12);
+			fresh.setExtraCost(i, extra);
+		}
+		int expected = fresh.nextStep();
+		assertEquals(expected, next);
+
+		// costs to go along the whole path agree, not just the first step
+		int i = costs.index((int)from.get(0), (int)from.get(1));
+		int goalIndex = costs.index((int)goal.get(0), (int)goal.get(1));
+		while (i != goalIndex) {
+			double g = fresh.getG(i);
+			assertEquals(g, repaired.getG(i), 1e-9 * g);
+			i = fresh.bestSuccessor(i);
+		}
+	}
+
+	@Test
+	public void testOverlayMatchesFreshSearch() {
+		Random rand = new Random(9);
+		StaticZombieMap map = new StaticZombieMap(W, H);
+		ProbabilityMap probDist = new ProbabilityMap(W, H);
+		for (int x=0; x<W; x++)
+			for (int y=0; y<H; y++) {
+				double r = rand.nextDouble();
+				map.set(r < 0.05 ? CellType.OBSTACLE : r < 0.15 ? CellType.BUILDING : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble(), x, y);
+			}
+		IntCoord start = new IntCoord(2, 2), goal = new IntCoord(W-3, H-3);
+		map.set(CellType.CLEAR, 2, 2);
+		map.set(CellType.CLEAR, W-3, H-3);
+
+		RiskAverseZombiePlanner planner = new RiskAverseZombiePlanner();
+		planner.initialize(new World(map, probDist));
+		planner.setGoal(goal);
+		Set<Zombie> none = Collections.emptySet();
+		checkOverlay(planner, start, goal, none);
+
+		// zombies coming and going, overlapping each other, and at the edges
+		for (int round=0; round<10; round++) {
+			Set<Zombie> zombies = Sets.newHashSet();
+			int n = 1 + rand.nextInt(8);
+			for (int k=0; k<n; k++)
+				zombies.add(new Zombie(new IntCoord(rand.nextInt(W), rand.nextInt(H)), 1.0));
+			zombies.add(new Zombie(new IntCoord(0, rand.nextInt(H)), 1.0));
+			checkOverlay(planner, start, goal, zombies);
+		}
+
+		// and cleared again
+		checkOverlay(planner, start, goal, none);
+		for (int i=0; i<W*H; i++)
+			assertEquals(0, planner.planner.getExtraCost(i), 0);
+	}
+
+}
@@ -0,0 +1,163 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.planner.RiskAverseZombiePlanner;
+import zombieplanner.planner.SimpleZombiePlanner;
+import zombieplanner.planner.ZombiePlanner;
+import zombieplanner.simulator.ExperimentRunner.PairedStats;
+import zombieplanner.simulator.ExperimentRunner.PlannerStats;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+
+public class AdaptiveExperimentTest {
+
+	private static final int ZOMBIES = 15;
+
+	// one next to its goal, which both planners always make, and one across
+	// the map, which they don't
+	private static final IntCoord EASY_START = new IntCoord(1, 1), EASY_GOAL = new IntCoord(2, 1);
+	private static final IntCoord HARD_START = new IntCoord(1, 28), HARD_GOAL = new IntCoord(38, 1);
+
+	static World world() {
+		int w = 40, h = 30;
+		Random rand = new Random(5);
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		ProbabilityMap probDist = new ProbabilityMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++) {
+				double r = rand.nextDouble();
+				map.set(r < 0.05 ? CellType.OBSTACLE : r < 0.2 ? CellType.BUILDING : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble(), x, y);
+			}
+		for (IntCoord c : new IntCoord[] { EASY_START, EASY_GOAL, HARD_START, HARD_GOAL })
+			map.set(CellType.CLEAR, (int)c.get(0), (int)c.get(1));
+		return new World(map, probDist);
+	}
+
+	static Map<String,Supplier<ZombiePlanner>> planners() {
+		Map<String,Supplier<ZombiePlanner>> planners = Maps.newLinkedHashMap();
+		planners.put("Risk Averse Planner", new Supplier<ZombiePlanner>() {
+			@Override
+			public ZombiePlanner get() {
+				return new RiskAverseZombiePlanner();
+			}
+		});
+		planners.put("Simple Planner", new Supplier<ZombiePlanner>() {
+			@Override
+			public ZombiePlanner get() {
+				return new SimpleZombiePlanner();
+			}
+		});
+		return planners;
+	}
+
+	private static AdaptiveExperiment experiment(ExperimentRunner runner) {
+		runner.setPaired(true);
+		AdaptiveExperiment experiment = new AdaptiveExperiment(runner, planners(),
+				"Risk Averse Planner", "Simple Planner");
+		experiment.setPrecision(0.1);
+		experiment.setBatchSize(10);
+		experiment.setTrialLimits(20, 60);
+		experiment.addConfig(EASY_START, EASY_GOAL, 11);
+		experiment.addConfig(HARD_START, HARD_GOAL, 12);
+		return experiment;
+	}
+
+	@Test
+	public void testTrialLimits() {
+		ExperimentRunner runner = new ExperimentRunner(world(), 4);
+		try {
+			AdaptiveExperiment experiment = experiment(runner);
+			assertEquals(80, experiment.run(ZOMBIES, 1000));
+			AdaptiveExperiment.Config easy = experiment.getConfigs().get(0);
+			AdaptiveExperiment.Config hard = experiment.getConfigs().get(1);
+			// decided as soon as it's allowed to be
+			assertTrue(easy.isDecided());
+			assertEquals(20, easy.getTrials());
+			// and the other stops at the maximum
+			assertFalse(hard.isDecided());
+			assertEquals(60, hard.getTrials());
+		} finally {
+			runner.shutdown();
+		}
+	}
+
+	@Test
+	public void testBudget() {
+		ExperimentRunner runner = new ExperimentRunner(world(), 4);
+		try {
+			AdaptiveExperiment experiment = experiment(runner);
+			assertEquals(25, experiment.run(ZOMBIES, 25));
+			assertEquals(15, experiment.getConfigs().get(0).getTrials());
+			assertEquals(10, experiment.getConfigs().get(1).getTrials());
+		} finally {
+			runner.shutdown();
+		}
+	}
+
+	@Test
+	public void testSharesFinishedConfigsTrials() {
+		ExperimentRunner runner = new ExperimentRunner(world(), 4);
+		try {
+			AdaptiveExperiment experiment = experiment(runner);
+			// two rounds of 10 each, then the hard one gets the whole third
+			assertEquals(60, experiment.run(ZOMBIES, 60));
+			assertEquals(20, experiment.getConfigs().get(0).getTrials());
+			assertEquals(40, experiment.getConfigs().get(1).getTrials());
+		} finally {
+			runner.shutdown();
+		}
+	}
+
+	@Test
+	public void testMatchesFixedSizeRun() {
+		ExperimentRunner runner = new ExperimentRunner(world(), 4);
+		ExperimentRunner fixed = new ExperimentRunner(world(), 1);
+		try {
+			AdaptiveExperiment experiment = experiment(runner);
+			experiment.run(ZOMBIES, 1000);
+			fixed.setPaired(true);
+			for (AdaptiveExperiment.Config config : experiment.getConfigs()) {
+				Map<String,PlannerStats> stats = Maps.newLinkedHashMap();
+				for (String name : planners().keySet())
+					stats.put(name, new PlannerStats());
+				PairedStats paired = new PairedStats("Risk Averse Planner", "Simple Planner");
+				fixed.run(config.getStart(), config.getGoal(), ZOMBIES, 0, config.getTrials(),
+						config.getSeed(), planners(), stats, paired);
+				for (String name : stats.keySet())
+					assertSameStats(stats.get(name), config.getStats().get(name));
+				assertSamePaired(paired, config.getPaired());
+			}
+		} finally {
+			runner.shutdown();
+			fixed.shutdown();
+		}
+	}
+
+	static void assertSameStats(PlannerStats expected, PlannerStats actual) {
+		assertEquals(expected.getTrials(), actual.getTrials());
+		assertEquals(expected.getSuccesses(), actual.getSuccesses());
+		assertEquals(expected.getAverageSteps(), actual.getAverageSteps(), 0);
+		assertEquals(expected.getAverageStunned(), actual.getAverageStunned(), 0);
+		assertEquals(expected.getStepsInterval(Interval.Z_95).getHalfWidth(),
+				actual.getStepsInterval(Interval.Z_95).getHalfWidth(), 1e-12);
+	}
+
+	static void assertSamePaired(PairedStats expected, PairedStats actual) {
+		assertEquals(expected.getTrials(), actual.getTrials());
+		assertEquals(expected.getFirstOnly(), actual.getFirstOnly());
+		assertEquals(expected.getSecondOnly(), actual.getSecondOnly());
+		assertEquals(expected.getStepsDifference(Interval.Z_95).getEstimate(),
+				actual.getStepsDifference(Interval.Z_95).getEstimate(), 0);
+	}
+
+}
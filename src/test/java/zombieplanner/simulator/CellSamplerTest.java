@@ -0,0 +1,75 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CellSamplerTest {
+
+	@Test
+	public void testMatchesWeights() {
+		ProbabilityMap probDist = new ProbabilityMap(10, 5);
+		Random rand = new Random(2);
+		for (int i=0; i<probDist.length(); i++)
+			probDist.getData()[i] = (i % 3 == 0) ? 0 : rand.nextDouble();
+		probDist.normalize();
+
+		CellSampler sampler = new CellSampler(probDist);
+		int draws = 500000;
+		int[] counts = new int[probDist.length()];
+		for (int n=0; n<draws; n++)
+			counts[sampler.sample(rand)]++;
+		for (int i=0; i<counts.length; i++) {
+			double p = probDist.getData()[i];
+			if (p == 0)
+				assertEquals(0, counts[i]);
+			else
+				assertEquals(p, (double)counts[i]/draws, 4*Math.sqrt(p/draws) + 1e-4);
+		}
+	}
+
+	@Test
+	public void testSampleDistinct() {
+		ProbabilityMap probDist = new ProbabilityMap(20, 10);
+		Random rand = new Random(5);
+		// very skewed weights, so rejection alone would stall
+		for (int i=0; i<probDist.length(); i++)
+			probDist.getData()[i] = (i % 7 == 0) ? 0 : Math.pow(10, -rand.nextInt(8));
+		probDist.normalize();
+		CellSampler sampler = new CellSampler(probDist);
+
+		for (int count : new int[] { 1, 10, sampler.size() }) {
+			int[] cells = sampler.sampleDistinct(rand, count);
+			assertEquals(count, cells.length);
+			boolean[] seen = new boolean[probDist.length()];
+			for (int i : cells) {
+				assertFalse(seen[i]);
+				seen[i] = true;
+				assertTrue(probDist.getData()[i] > 0);
+			}
+		}
+
+		// the first cell drawn follows the weights
+		int heavy = 0, draws = 20000;
+		double heavyWeight = 0;
+		for (int i=0; i<probDist.length(); i++)
+			if (probDist.getData()[i] >= 0.5 * maxWeight(probDist))
+				heavyWeight += probDist.getData()[i];
+		for (int n=0; n<draws; n++) {
+			int i = sampler.sampleDistinct(rand, 150)[0];
+			if (probDist.getData()[i] >= 0.5 * maxWeight(probDist))
+				heavy++;
+		}
+		assertEquals(heavyWeight, (double)heavy/draws, 0.02);
+	}
+
+	private static double maxWeight(ProbabilityMap probDist) {
+		double max = 0;
+		for (double p : probDist.getData())
+			max = Math.max(max, p);
+		return max;
+	}
+
+}
@@ -0,0 +1,57 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import robotutils.data.CoordUtils;
+import robotutils.data.IntCoord;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class ConfigGeneratorTest {
+
+	@Test
+	public void testGeneratesConnectedPairsInRange() {
+		// two rooms split by a wall, plus a walled-in cell
+		int w = 30, h = 20;
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++)
+				map.set((x == 10) ? CellType.OBSTACLE : CellType.CLEAR, x, y);
+		map.set(CellType.BUILDING, 25, 5);
+		map.set(CellType.OBSTACLE, 24, 0);
+		map.set(CellType.OBSTACLE, 26, 0);
+		map.set(CellType.OBSTACLE, 25, 1);
+		ConfigGenerator configs = new ConfigGenerator(map);
+
+		assertEquals(3, configs.getComponentCount());
+		assertEquals(-1, configs.componentOf(10, 3));
+		assertEquals(-1, configs.componentOf(w, 0));
+		assertEquals(1, configs.getComponentSize(configs.componentOf(25, 0)));
+		assertEquals(10 * h, configs.getComponentSize(configs.componentOf(0, 0)));
+		assertTrue(configs.isReachable(new IntCoord(0, 0), new IntCoord(9, 19)));
+		assertTrue(configs.isReachable(new IntCoord(11, 0), new IntCoord(25, 5)));
+		assertFalse(configs.isReachable(new IntCoord(0, 0), new IntCoord(11, 0)));
+
+		configs.setDistanceRange(5, 12);
+		Random rand = new SplitMixRandom(1);
+		for (int n=0; n<1000; n++) {
+			IntCoord[] config = configs.next(rand);
+			assertTrue(configs.isReachable(config[0], config[1]));
+			double d = CoordUtils.mdist(config[0], config[1]);
+			assertTrue(5 <= d && d <= 12);
+			assertFalse(config[0].equals(new IntCoord(25, 0)));
+		}
+
+		configs.setDistanceRange(100, 200);
+		try {
+			configs.next(rand);
+			fail("found a start and goal further apart than the map");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+import static zombieplanner.simulator.AdaptiveExperimentTest.assertSamePaired;
+import static zombieplanner.simulator.AdaptiveExperimentTest.assertSameStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.planner.ZombiePlanner;
+import zombieplanner.simulator.ExperimentRunner.PairedStats;
+import zombieplanner.simulator.ExperimentRunner.PlannerStats;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+
+public class ExperimentRunnerTest {
+
+	private static final IntCoord START = new IntCoord(1, 28), GOAL = new IntCoord(38, 1);
+	private static final int ZOMBIES = 15, TRIALS = 30;
+	private static final long SEED = 21;
+
+	private static final Map<String,Supplier<ZombiePlanner>> PLANNERS = AdaptiveExperimentTest.planners();
+
+	private static Map<String,PlannerStats> newStats() {
+		Map<String,PlannerStats> stats = Maps.newLinkedHashMap();
+		for (String name : PLANNERS.keySet())
+			stats.put(name, new PlannerStats());
+		return stats;
+	}
+
+	private static PairedStats newPaired() {
+		return new PairedStats("Risk Averse Planner", "Simple Planner");
+	}
+
+	private static void run(ExperimentRunner runner, int from, int to,
+			Map<String,PlannerStats> stats, PairedStats paired) {
+		runner.setPaired(true);
+		try {
+			runner.run(START, GOAL, ZOMBIES, from, to, SEED, PLANNERS, stats, paired);
+		} finally {
+			runner.shutdown();
+		}
+	}
+
+	@Test
+	public void testSameStatsOnAnyThreads() {
+		Map<String,PlannerStats> one = newStats(), many = newStats();
+		PairedStats pairedOne = newPaired(), pairedMany = newPaired();
+		run(new ExperimentRunner(AdaptiveExperimentTest.world(), 1), 0, TRIALS, one, pairedOne);
+		run(new ExperimentRunner(AdaptiveExperimentTest.world(), 4), 0, TRIALS, many, pairedMany);
+
+		assertEquals(TRIALS, pairedOne.getTrials());
+		for (String name : PLANNERS.keySet())
+			assertSameStats(one.get(name), many.get(name));
+		assertSamePaired(pairedOne, pairedMany);
+	}
+
+	@Test
+	public void testResumesFromSink() throws IOException {
+		Map<String,PlannerStats> expected = newStats();
+		PairedStats expectedPaired = newPaired();
+		run(new ExperimentRunner(AdaptiveExperimentTest.world(), 4), 0, TRIALS, expected, expectedPaired);
+
+		File file = File.createTempFile("results", ".tsv");
+		file.delete();
+		try {
+			// stopped part way through
+			ResultsSink sink = new ResultsSink(file);
+			ExperimentRunner runner = new ExperimentRunner(AdaptiveExperimentTest.world(), 4);
+			runner.setSink(sink);
+			run(runner, 0, TRIALS / 2, newStats(), newPaired());
+			sink.close();
+
+			// and picked up again
+			sink = new ResultsSink(file);
+			assertEquals(TRIALS / 2 * PLANNERS.size(), sink.size());
+			runner = new ExperimentRunner(AdaptiveExperimentTest.world(), 4);
+			runner.setSink(sink);
+			Map<String,PlannerStats> resumed = newStats();
+			PairedStats resumedPaired = newPaired();
+			run(runner, 0, TRIALS, resumed, resumedPaired);
+			assertEquals(TRIALS * PLANNERS.size(), sink.size());
+			sink.close();
+
+			for (String name : PLANNERS.keySet())
+				assertSameStats(expected.get(name), resumed.get(name));
+			assertSamePaired(expectedPaired, resumedPaired);
+		} finally {
+			file.delete();
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class IntervalTest {
+
+	@Test
+	public void testWilson() {
+		Interval i = Interval.wilson(8, 10, Interval.Z_95);
+		assertEquals(0.8, i.getEstimate(), 1e-12);
+		assertEquals(0.4902, i.getLower(), 1e-4);
+		assertEquals(0.9433, i.getUpper(), 1e-4);
+
+		// stays within [0,1] at the extremes
+		Interval none = Interval.wilson(0, 20, Interval.Z_95);
+		assertEquals(0, none.getLower(), 0);
+		assertEquals(0.1611, none.getUpper(), 1e-4);
+		assertTrue(Interval.wilson(0, 0, Interval.Z_95).contains(0.5));
+	}
+
+	@Test
+	public void testDifference() {
+		// Newcombe (1998), method 10: 56/70 - 48/80
+		Interval d = Interval.difference(Interval.wilson(56, 70, Interval.Z_95),
+				Interval.wilson(48, 80, Interval.Z_95));
+		assertEquals(0.2, d.getEstimate(), 1e-12);
+		assertEquals(0.0524, d.getLower(), 1e-4);
+		assertEquals(0.3339, d.getUpper(), 1e-4);
+	}
+
+	@Test
+	public void testPairedDifference() {
+		Interval d = Interval.pairedDifference(5, 1, 20, Interval.Z_95);
+		assertEquals(0.2, d.getEstimate(), 1e-12);
+		assertEquals(-0.0413, d.getLower(), 1e-4);
+		assertEquals(0.4050, d.getUpper(), 1e-4);
+
+		// doesn't collapse when every pair agrees
+		assertTrue(Interval.pairedDifference(0, 0, 20, Interval.Z_95).getHalfWidth() > 0);
+	}
+
+}
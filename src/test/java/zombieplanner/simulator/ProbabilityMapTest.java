@@ -54,4 +54,22 @@ public class ProbabilityMapTest {
 		assertEquals(map.get(0, 1), 0.3, eps);
 		assertEquals(map.get(1, 1), 0.4, eps);
 	}
+
+	@Test
+	public void testFastPathsMatchVarargs() {
+		map = new ProbabilityMap(3, 2);
+		map.set(0.5, new int[] { 2, 1 });
+		int modCount = map.getModCount();
+		map.set(0.5, 2, 1);
+		assertEquals(modCount, map.getModCount());
+		map.set(0.25, 1, 1);
+		assertTrue(map.getModCount() != modCount);
+		map.set(1.0, 3, 0);
+		for (int y = -1; y <= 2; y++)
+			for (int x = -1; x <= 3; x++)
+				assertEquals(map.get(new int[] { x, y }), map.get(x, y), 0);
+		assertEquals(0.5, map.getLinear(5), 0);
+		assertEquals(0.25, map.getLinear(4), 0);
+	}
+
 }
@@ -0,0 +1,53 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import zombieplanner.simulator.ZombieSimulator.GameState;
+
+public class ResultsSinkTest {
+
+	@Test
+	public void testResumesAfterCrash() throws IOException {
+		File file = File.createTempFile("results", ".tsv");
+		file.delete();
+		try {
+			ResultsSink sink = new ResultsSink(file);
+			for (int seed=0; seed<300; seed++)
+				sink.write(new TrialResult("40 1,2 3,4", "Simple Planner", seed,
+						(seed % 3 == 0) ? GameState.FAILURE : GameState.SUCCESS, seed, seed % 5, 1000L * seed));
+			sink.close();
+
+			// a record cut off part way, as if the JVM died while writing it
+			FileOutputStream out = new FileOutputStream(file, true);
+			out.write("40 1,2 3,4\tSimple Planner\t300\tSUCC".getBytes("UTF-8"));
+			out.close();
+
+			sink = new ResultsSink(file);
+			assertEquals(300, sink.size());
+			TrialResult r = sink.get("40 1,2 3,4", "Simple Planner", 7);
+			assertEquals(GameState.SUCCESS, r.getOutcome());
+			assertEquals(7, r.getSteps());
+			assertEquals(2, r.getStunned());
+			assertEquals(7000L, r.getWallNanos());
+			assertNull(sink.get("40 1,2 3,4", "Simple Planner", 300));
+			assertNull(sink.get("40 1,2 3,4", "Risk Averse Planner", 7));
+
+			sink.write(new TrialResult("40 1,2 3,4", "Simple Planner", 300, GameState.SUCCESS, 1, 0, 1L));
+			sink.close();
+			sink = new ResultsSink(file);
+			assertEquals(301, sink.size());
+			assertEquals(1, sink.get("40 1,2 3,4", "Simple Planner", 300).getSteps());
+			sink.close();
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class StaticZombieMapTest {
+
+	@Test
+	public void testFromByteVal() {
+		for (CellType t : CellType.values())
+			assertSame(t, CellType.fromByteVal(t.getByteVal()));
+		assertNull(CellType.fromByteVal((byte)1));
+		assertNull(CellType.fromByteVal((byte)254));
+	}
+
+	@Test
+	public void testFastPathsMatchVarargs() {
+		int width = 7, height = 5;
+		StaticZombieMap map = new StaticZombieMap(width, height);
+		Random rand = new Random(3);
+		CellType[] types = CellType.values();
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				map.set(types[rand.nextInt(types.length)], x, y);
+
+		for (int y = -1; y <= height; y++) {
+			for (int x = -1; x <= width; x++) {
+				assertEquals(map.get(new int[] { x, y }), map.get(x, y));
+				assertEquals(map.typeOf(new int[] { x, y }), map.typeOf(x, y));
+				if (x < 0 || x >= width || y < 0 || y >= height)
+					continue;
+				int i = x + y*width;
+				assertEquals(map.get(x, y), map.getLinear(i));
+				assertEquals(map.typeOf(x, y), map.typeOfLinear(i));
+
+				int expected = 0;
+				if (map.typeOf(x-1, y) != CellType.OBSTACLE) expected |= ZombieMap.NEIGHBOR_LEFT;
+				if (map.typeOf(x+1, y) != CellType.OBSTACLE) expected |= ZombieMap.NEIGHBOR_RIGHT;
+				if (map.typeOf(x, y-1) != CellType.OBSTACLE) expected |= ZombieMap.NEIGHBOR_UP;
+				if (map.typeOf(x, y+1) != CellType.OBSTACLE) expected |= ZombieMap.NEIGHBOR_DOWN;
+				assertEquals(expected, map.neighborsOf(i));
+			}
+		}
+
+		// out of bounds writes are ignored, and resizing picks up the new array
+		map.set(CellType.CLEAR, width, 0);
+		map.resize(3, 2);
+		map.set(CellType.BUILDING, 2, 1);
+		assertEquals(CellType.BUILDING, map.typeOf(new int[] { 2, 1 }));
+		assertEquals(CellType.BUILDING, map.typeOfLinear(5));
+	}
+
+}
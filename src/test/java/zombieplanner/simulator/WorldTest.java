@@ -0,0 +1,99 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import zombieplanner.simulator.ZombieMap.CellType;
+
+import com.google.common.base.Supplier;
+
+public class WorldTest {
+
+	@Test
+	public void testFiltersCopies() {
+		int w = 40, h = 30;
+		Random rand = new Random(3);
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		ProbabilityMap probDist = new ProbabilityMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++) {
+				double r = rand.nextDouble();
+				map.set(r < 0.1 ? CellType.OBSTACLE : r < 0.3 ? CellType.BUILDING : CellType.CLEAR, x, y);
+				probDist.set(rand.nextDouble() * 5, x, y);
+			}
+		double[] raw = probDist.getData().clone();
+
+		World world = new World(map, probDist);
+		double sum = 0;
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++) {
+				boolean clear = map.typeOf(x, y) == CellType.CLEAR;
+				assertEquals(clear, world.isWalkable(x, y));
+				assertEquals(map.typeOf(x, y), world.getMap().typeOf(x, y));
+				if (!clear)
+					assertEquals(0, world.getProbDist().get(x, y), 0);
+				sum += world.getProbDist().get(x, y);
+			}
+		assertEquals(1, sum, 1e-9);
+		assertFalse(world.isWalkable(-1, 0));
+
+		// the originals are untouched, and later changes to them don't leak in
+		assertArrayEquals(raw, probDist.getData(), 0);
+		CellType before = map.typeOf(0, 0);
+		map.set(before == CellType.OBSTACLE ? CellType.CLEAR : CellType.OBSTACLE, 0, 0);
+		probDist.set(100, 1, 1);
+		assertEquals(before, world.getMap().typeOf(0, 0));
+		assertTrue(world.getProbDist().get(1, 1) < 1);
+
+		// shared until the distribution changes
+		World shared = World.of(map, probDist);
+		assertSame(shared, World.of(map, probDist));
+		probDist.set(50, 2, 2);
+		assertNotSame(shared, World.of(map, probDist));
+	}
+
+	@Test
+	public void testKeepsLayers() {
+		StaticZombieMap map = new StaticZombieMap(4, 3);
+		ProbabilityMap probDist = new ProbabilityMap(4, 3);
+		map.set(CellType.CLEAR, 1, 1);
+		probDist.set(1, 1, 1);
+		World world = new World(map, probDist);
+		final int[] built = { 0 };
+		Supplier<Object> build = new Supplier<Object>() {
+			@Override
+			public Object get() {
+				built[0]++;
+				return new Object();
+			}
+		};
+		Object layer = world.getLayer(Arrays.asList("a", 1), build);
+		assertSame(layer, world.getLayer(Arrays.asList("a", 1), build));
+		assertEquals(1, built[0]);
+
+		// the least recently used layers are dropped past the limit
+		final boolean[] dropped = { false };
+		world.getLayer("dropped", new Supplier<World.Layer>() {
+			@Override
+			public World.Layer get() {
+				return new World.Layer() {
+					@Override
+					public void dropped() {
+						dropped[0] = true;
+					}
+				};
+			}
+		});
+		for (int k = 0; k < World.MAX_LAYERS; k++) {
+			world.getLayer(Arrays.asList("a", 1), build);
+			world.getLayer(k, build);
+		}
+		assertTrue(dropped[0]);
+		assertSame(layer, world.getLayer(Arrays.asList("a", 1), build));
+	}
+
+}
@@ -0,0 +1,64 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class ZombieFlowFieldTest {
+
+	@Test
+	public void testFollowsShortestWalkablePaths() {
+		int w = 30, h = 20, radius = 6;
+		Random rand = new Random(4);
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++)
+				map.set(rand.nextDouble() < 0.25 ? CellType.BUILDING : CellType.CLEAR, x, y);
+
+		ZombieFlowField flow = new ZombieFlowField(map, radius);
+		for (int source=0; source<w*h; source+=17) {
+			flow.compute(source);
+			assertEquals(-1, flow.next(source));
+
+			// reference depths by repeated relaxation
+			int[] depth = new int[w*h];
+			Arrays.fill(depth, Integer.MAX_VALUE);
+			depth[source] = 0;
+			for (boolean changed = true; changed; ) {
+				changed = false;
+				for (int i=0; i<w*h; i++) {
+					if (depth[i] == Integer.MAX_VALUE || depth[i] >= radius)
+						continue;
+					int x = i % w, y = i / w;
+					int[][] nbrs = { {x-1,y}, {x+1,y}, {x,y-1}, {x,y+1} };
+					for (int[] n : nbrs) {
+						if (n[0] < 0 || n[0] >= w || n[1] < 0 || n[1] >= h
+								|| map.typeOf(n[0], n[1]) != CellType.CLEAR)
+							continue;
+						int j = n[0] + n[1]*w;
+						if (depth[i] + 1 < depth[j]) {
+							depth[j] = depth[i] + 1;
+							changed = true;
+						}
+					}
+				}
+			}
+
+			for (int i=0; i<w*h; i++) {
+				assertEquals(depth[i] != Integer.MAX_VALUE, flow.contains(i));
+				if (!flow.contains(i) || i == source)
+					continue;
+				assertEquals(depth[i], flow.depth(i));
+				int next = flow.next(i);
+				assertEquals(1, Math.abs(next % w - i % w) + Math.abs(next / w - i / w));
+				assertEquals(depth[i] - 1, flow.depth(next));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import robotutils.data.CoordUtils;
+import robotutils.data.IntCoord;
+
+import com.google.common.collect.Sets;
+
+public class ZombieIndexTest {
+
+	@Test
+	public void testMatchesFullScans() {
+		int w = 50, h = 37;
+		Random rand = new Random(9);
+		ZombiePopulation zombies = new ZombiePopulation(w, h);
+		for (int k=0; k<200; k++)
+			zombies.add(rand.nextInt(w*h), 1.0);
+		ZombieIndex index = zombies.getIndex();
+
+		for (int round=0; round<50; round++) {
+			for (Zombie zombie : zombies) {
+				if (rand.nextDouble() < 0.5)
+					zombie.setPosition(new IntCoord(rand.nextInt(w), rand.nextInt(h)));
+				if (rand.nextDouble() < 0.02)
+					zombie.setAlive(!zombie.isAlive());
+			}
+
+			IntCoord p = new IntCoord(rand.nextInt(w), rand.nextInt(h));
+			int radius = rand.nextInt(15);
+			Set<Zombie> expected = Sets.newHashSet();
+			double min = Double.POSITIVE_INFINITY;
+			Zombie at = null;
+			int alive = 0;
+			for (Zombie zombie : zombies) {
+				if (!zombie.isAlive())
+					continue;
+				alive++;
+				double d = CoordUtils.mdist(p, zombie.getPosition());
+				if (d <= radius)
+					expected.add(zombie);
+				min = Math.min(min, d);
+				if (d == 0)
+					at = zombie;
+			}
+
+			assertEquals(alive, index.size());
+			assertEquals(expected, index.within(p, radius, Sets.<Zombie>newHashSet()));
+			Zombie nearest = index.nearest(p, radius);
+			if (min <= radius)
+				assertEquals(min, CoordUtils.mdist(p, nearest.getPosition()), 0);
+			else
+				assertNull(nearest);
+			assertEquals(at == null, index.at(p) == null);
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class ZombiePopulationTest {
+
+	@Test
+	public void testParallelStepsMatchSequential() {
+		int w = 200, h = 150;
+		Random rand = new Random(6);
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++)
+				map.set(rand.nextDouble() < 0.2 ? CellType.BUILDING : CellType.CLEAR, x, y);
+		ZombieFlowField flow = new ZombieFlowField(map, 12);
+
+		ZombiePopulation a = new ZombiePopulation(w, h), b = new ZombiePopulation(w, h);
+		for (int k=0; k<20000; k++) {
+			int cell;
+			do {
+				cell = rand.nextInt(w*h);
+			} while (!flow.isWalkable(cell % w, cell / w));
+			double speed = Zombie.MIN_SPEED + rand.nextDouble() * (Zombie.MAX_SPEED - Zombie.MIN_SPEED);
+			a.add(cell, speed);
+			b.add(cell, speed);
+			if (k % 10 == 0) {
+				a.setAlive(k, false);
+				b.setAlive(k, false);
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Random ra = new SplitMixRandom(1), rb = new SplitMixRandom(1);
+		for (int step=0; step<20; step++) {
+			int source;
+			do {
+				source = rand.nextInt(w*h);
+			} while (!flow.isWalkable(source % w, source / w));
+			flow.compute(source);
+			a.step(flow, ra, null);
+			b.step(flow, rb, pool);
+			for (int k=0; k<a.size(); k++) {
+				assertEquals(a.cell(k), b.cell(k));
+				assertTrue(flow.isWalkable(a.cell(k) % w, a.cell(k) / w));
+				if (!a.isAlive(k))
+					assertEquals(b.get(k).getPosition(), a.get(k).getPosition());
+			}
+		}
+		pool.shutdown();
+		assertEquals(18000, a.getIndex().size());
+	}
+
+	@Test
+	public void testLazyKeepsNearbyZombiesCurrent() {
+		int w = 300, h = 300, radius = 12;
+		Random rand = new Random(8);
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++)
+				map.set(rand.nextDouble() < 0.2 ? CellType.BUILDING : CellType.CLEAR, x, y);
+		ZombieFlowField flow = new ZombieFlowField(map, radius);
+
+		ZombiePopulation zombies = new ZombiePopulation(w, h);
+		zombies.setLazyRadius(radius);
+		for (int k=0; k<5000; k++) {
+			int cell;
+			do {
+				cell = rand.nextInt(w*h);
+			} while (!flow.isWalkable(cell % w, cell / w));
+			zombies.add(cell, rand);
+		}
+
+		// wander the source around like a human would
+		int source;
+		do {
+			source = rand.nextInt(w*h);
+		} while (!flow.isWalkable(source % w, source / w));
+		Random zr = new SplitMixRandom(2);
+		int parked = 0;
+		for (int step=0; step<200; step++) {
+			int x = source % w, y = source / w;
+			switch (rand.nextInt(4)) {
+			case 0: x++; break;
+			case 1: x--; break;
+			case 2: y++; break;
+			case 3: y--; break;
+			}
+			if (flow.isWalkable(x, y))
+				source = x + y*w;
+			flow.compute(source);
+			zombies.step(flow, zr, null);
+
+			for (int k=0; k<zombies.size(); k++) {
+				int cell = zombies.cell(k);
+				int d = Math.abs(cell % w - source % w) + Math.abs(cell / w - source / w);
+				if (!zombies.isCurrent(k)) {
+					parked++;
+					assertTrue(d > radius);
+				}
+			}
+		}
+		assertTrue(parked > 100 * zombies.size());
+
+		// turning lazy mode off needs random numbers to catch up with
+		try {
+			zombies.setLazyRadius(-1);
+			fail("turned lazy mode off with zombies parked");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		zombies.catchUp(zr);
+		for (int k=0; k<zombies.size(); k++) {
+			assertTrue(zombies.isCurrent(k));
+			assertTrue(flow.isWalkable(zombies.cell(k) % w, zombies.cell(k) / w));
+		}
+	}
+
+	@Test
+	public void testPerZombieStreamsMakeLazyMatchEager() {
+		int w = 200, h = 200, radius = 12;
+		Random rand = new Random(4);
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++)
+				map.set(rand.nextDouble() < 0.2 ? CellType.BUILDING : CellType.CLEAR, x, y);
+		ZombieFlowField flow = new ZombieFlowField(map, radius);
+
+		ZombiePopulation eager = new ZombiePopulation(w, h), lazy = new ZombiePopulation(w, h);
+		eager.setStreamSeed(5);
+		lazy.setStreamSeed(5);
+		lazy.setLazyRadius(radius);
+		for (int k=0; k<3000; k++) {
+			int cell;
+			do {
+				cell = rand.nextInt(w*h);
+			} while (!flow.isWalkable(cell % w, cell / w));
+			double speed = Zombie.MIN_SPEED + rand.nextDouble() * (Zombie.MAX_SPEED - Zombie.MIN_SPEED);
+			eager.add(cell, speed);
+			lazy.add(cell, speed);
+		}
+
+		int source = w/2 + h/2 * w;
+		for (int step=0; step<100; step++) {
+			int x = source % w + rand.nextInt(3) - 1, y = source / w + rand.nextInt(3) - 1;
+			if (flow.isWalkable(x, y))
+				source = x + y*w;
+			flow.compute(source);
+			// the generators passed in shouldn't matter
+			eager.step(flow, new SplitMixRandom(step), null);
+			lazy.step(flow, new SplitMixRandom(-step), null);
+			if (step % 10 == 0)
+				lazy.catchUp(rand);
+			for (int k=0; k<eager.size(); k++)
+				if (lazy.isCurrent(k))
+					assertEquals(eager.cell(k), lazy.cell(k));
+		}
+		lazy.catchUp(rand);
+		for (int k=0; k<eager.size(); k++)
+			assertEquals(eager.cell(k), lazy.cell(k));
+	}
+
+	@Test
+	public void testWalkMatchesTurns() {
+		int w = 101, h = 101, turns = 30, samples = 20000;
+		StaticZombieMap map = new StaticZombieMap(w, h);
+		for (int x=0; x<w; x++)
+			for (int y=0; y<h; y++)
+				map.set(CellType.CLEAR, x, y);
+		ZombieFlowField flow = new ZombieFlowField(map, 0);
+		flow.compute(0);
+		int start = 50 + 50*w;
+		Random rand = new SplitMixRandom(3);
+
+		for (double speed : new double[] { 0.7, 1.3 }) {
+			double walked = 0, turned = 0;
+			for (int n=0; n<samples; n++) {
+				int a = ZombiePopulation.walk(start, speed, turns, flow, rand);
+				int b = start;
+				for (int t=0; t<turns; t++)
+					b = ZombiePopulation.turn(b, speed, flow, rand);
+				walked += Math.abs(a % w - 50) + Math.abs(a / w - 50);
+				turned += Math.abs(b % w - 50) + Math.abs(b / w - 50);
+			}
+			assertEquals(turned / samples, walked / samples, 0.05 * turned / samples);
+		}
+	}
+
+}
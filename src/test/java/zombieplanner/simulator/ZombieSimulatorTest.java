@@ -0,0 +1,56 @@
+package zombieplanner.simulator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import robotutils.data.IntCoord;
+import zombieplanner.planner.RiskAverseZombiePlanner;
+import zombieplanner.simulator.ZombieSimulator.GameState;
+import zombieplanner.simulator.impl.GTMapGenerator;
+
+public class ZombieSimulatorTest {
+
+	private static ZombieSimulator run(long seed) {
+		return run(seed, false, false);
+	}
+
+	private static ZombieSimulator run(long seed, boolean perZombieStreams, boolean catchUp) {
+		ZombieSimulator sim = new ZombieSimulator(GTMapGenerator.loadGTMap(),
+				GTMapGenerator.loadGTZombieProbabilities(0.1), new RiskAverseZombiePlanner(), seed);
+		sim.setPerZombieStreams(perZombieStreams);
+		sim.setHumanPosition(new IntCoord(82, 37));
+		sim.setGoalPosition(new IntCoord(328, 222));
+		sim.initializeZombies();
+		while (sim.getState() == GameState.ACTIVE) {
+			sim.stepOnce();
+			if (catchUp)
+				sim.catchUpZombies();
+		}
+		return sim;
+	}
+
+	@Test
+	public void testReplaysFromSeed() {
+		for (long seed=1; seed<=3; seed++) {
+			ZombieSimulator a = run(seed), b = run(seed);
+			assertEquals(a.getState(), b.getState());
+			assertEquals(a.totalSteps, b.totalSteps);
+			assertEquals(a.zombiesStunned, b.zombiesStunned);
+			assertEquals(a.human, b.human);
+		}
+	}
+
+	@Test
+	public void testCatchingUpDoesntChangeReplays() {
+		// as the UI does every step
+		for (long seed=1; seed<=3; seed++) {
+			ZombieSimulator a = run(seed, true, false), b = run(seed, true, true);
+			assertEquals(a.getState(), b.getState());
+			assertEquals(a.totalSteps, b.totalSteps);
+			assertEquals(a.zombiesStunned, b.zombiesStunned);
+			assertEquals(a.human, b.human);
+		}
+	}
+
+}
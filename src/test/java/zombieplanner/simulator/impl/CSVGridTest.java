@@ -0,0 +1,99 @@
+package zombieplanner.simulator.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import zombieplanner.simulator.ZombieMap;
+import zombieplanner.simulator.ZombieMap.CellType;
+
+public class CSVGridTest {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private static double[] parse(String text, int width, int height) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			return CSVGrid.parse(text.getBytes(ASCII), "test.csv", width, height, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static void assertRejected(String text, int width, int height) {
+		try {
+			parse(text, width, height);
+			fail("parsed bad grid " + text);
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("test.csv"));
+		}
+	}
+
+	@Test
+	public void testParsesLikeParseDouble() throws IOException {
+		Random rand = new Random(42);
+		String[] fixed = { "0", "1", "-0", "0.0076335", "12.5", ".5", "5.", "1e3",
+				"-2.5E-4", "+7", "123456789012345678901234", "0.1000000000000000055511151231257827",
+				"4.9e-324", "1.7976931348623157e308", "-1e30", "-123456789012345678901234",
+				"-0.000000000000000000000000123", "-9007199254740993" };
+		int width = 20, height = 50;
+		String[] entries = new String[width * height];
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < entries.length; i++) {
+			if (i < fixed.length)
+				entries[i] = fixed[i];
+			else if (i % 3 == 0)
+				entries[i] = Double.toString(rand.nextDouble() * Math.pow(10, rand.nextInt(20) - 10));
+			else
+				entries[i] = String.format(Locale.US, "%.7f", rand.nextDouble());
+			text.append(entries[i]).append(i % width == width - 1 ? "\r\n" : ",");
+		}
+		double[] values = parse(text.toString(), width, height);
+		for (int i = 0; i < entries.length; i++)
+			assertEquals(entries[i], Double.doubleToLongBits(Double.parseDouble(entries[i])),
+					Double.doubleToLongBits(values[i]));
+	}
+
+	@Test
+	public void testRejectsBadGrids() {
+		assertRejected("1,2\n3,4\n", 3, 2);
+		assertRejected("1,2,3\n3,4\n", 3, 2);
+		assertRejected("1,2,3\n3,4,5,6\n", 3, 2);
+		assertRejected("1,2,3\n", 3, 2);
+		assertRejected("1,2,3\n4,5,6\n7,8,9\n", 3, 2);
+		assertRejected("1,2,3\n4,,6\n", 3, 2);
+		assertRejected("1,2,3\n4,x,6\n", 3, 2);
+		assertRejected("1,2,3\n4,5e,6\n", 3, 2);
+		assertRejected("1,2,3\n4,1.2.3,6\n", 3, 2);
+		assertRejected("1,2,3,\n4,5,6\n", 3, 2);
+	}
+
+	@Test
+	public void testReadsGTMapLayers() throws IOException {
+		ZombieMap map = GTMapGenerator.loadGTMapFromCSV();
+		double[][] layers = CSVGrid.readResources(new String[] { GTMapGenerator.OBSTACLE_MAP,
+				GTMapGenerator.BUILDING_MAP, GTMapGenerator.CLEAR_MAP },
+				GTMapGenerator.WIDTH, GTMapGenerator.HEIGHT);
+		CellType[] types = { CellType.OBSTACLE, CellType.BUILDING, CellType.CLEAR };
+		for (int y = 0; y < GTMapGenerator.HEIGHT; y++)
+			for (int x = 0; x < GTMapGenerator.WIDTH; x++)
+				for (int k = 0; k < types.length; k++)
+					assertEquals(layers[k][x + y * GTMapGenerator.WIDTH] == 1,
+							map.typeOf(x, y) == types[k]);
+
+		try {
+			CSVGrid.readResources(new String[] { GTMapGenerator.CLEAR_MAP, "no_such_map.csv" },
+					GTMapGenerator.WIDTH, GTMapGenerator.HEIGHT);
+			fail("read a missing resource");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
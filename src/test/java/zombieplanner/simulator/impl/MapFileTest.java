@@ -0,0 +1,66 @@
+package zombieplanner.simulator.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import zombieplanner.simulator.ProbabilityMap;
+import zombieplanner.simulator.ZombieMap;
+
+public class MapFileTest {
+
+	@Test
+	public void testRoundTripsGTMap() throws IOException {
+		ZombieMap map = GTMapGenerator.loadGTMapFromCSV();
+		ProbabilityMap density = GTMapGenerator.loadGTZombieProbabilitiesFromCSV(0);
+		File file = File.createTempFile("gtmap", ".zmap");
+		try {
+			MapFile.save(file, map, density, false);
+			MapFile loaded = MapFile.load(file);
+			assertArrayEquals(map.getData(), loaded.getMap().getData());
+			assertArrayEquals(density.getData(), loaded.getDensity().getData(), 0);
+
+			MapFile.save(file, map, density, true);
+			loaded = MapFile.load(file);
+			assertArrayEquals(map.getData(), loaded.getMap().getData());
+			assertArrayEquals(density.getData(), loaded.getDensity().getData(), 1e-6);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testRejectsBadFiles() throws IOException {
+		File file = File.createTempFile("bad", ".zmap");
+		try {
+			MapFile.save(file, GTMapGenerator.loadGTMapFromCSV(),
+					GTMapGenerator.loadGTZombieProbabilitiesFromCSV(0), true);
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.setLength(raf.length() - 4);
+			raf.close();
+			try {
+				MapFile.load(file);
+				fail("loaded a truncated file");
+			} catch (IOException e) {
+				// expected
+			}
+
+			raf = new RandomAccessFile(file, "rw");
+			raf.writeInt(0);
+			raf.close();
+			try {
+				MapFile.load(file);
+				fail("loaded a file with no magic number");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+}